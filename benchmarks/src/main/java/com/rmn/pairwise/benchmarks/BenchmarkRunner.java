@@ -0,0 +1,29 @@
+package com.rmn.pairwise.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import java.io.IOException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler turned on, so every result comes with its allocation rate. Takes the same
+ * command-line arguments as the standard JMH runner, e.g. "java -jar target/benchmarks.jar Generation -p shape=50x5"
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() { }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.rmn.pairwise.benchmarks;
+
+import com.rmn.pairwise.IInventory;
+import com.rmn.pairwise.PairwiseInventory;
+import com.rmn.pairwise.PairwiseInventoryFactory;
+import com.rmn.pairwise.Scenario;
+import com.rmn.pairwise.TestDataSet;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the two expensive phases of a generation run: building the molecules on their own, and a full run (building the
+ * molecules, then the test cases). The GC profiler counts everything allocated during an iteration, setup included, so the
+ * test case phase is measured together with the molecules it needs rather than with a per-invocation setup; subtract
+ * buildMolecules to get the cost of buildTestCases alone.
+ *
+ * A faster run that produces a bigger suite isn't a win, so generate() also reports the suite size, as the "testSets" counter
+ * in JMH's results
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenerationBenchmark {
+
+    @Param({ "10x3", "50x5", "100x10", "skewed" })
+    public String shape;
+
+    private Scenario scenario;
+
+    /**
+     * The size of the suite generate() produced, reported by JMH next to the timings. Only generate() uses this state, so only
+     * its results have the counter
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Suite {
+        public int testSets;
+        private boolean counting = false;
+        private boolean counted = false;
+
+        @Setup(Level.Iteration)
+        public void startIteration(IterationParams iteration) {
+            //JMH adds a counter up over the measured iterations, and every run gives the same suite, so count it in just one
+            counting = !counted && iteration.getType() == IterationType.MEASUREMENT;
+            counted |= counting;
+            testSets = 0;
+        }
+
+        void count(TestDataSet dataSet) {
+            if (counting) {
+                testSets = dataSet.getRawTestSets().size();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpScenario() {
+        scenario = PairwiseInventoryFactory.generateScenario(SyntheticScenarios.forShape(shape));
+    }
+
+    private IInventory newInventory() {
+        IInventory inventory = new PairwiseInventory();
+        inventory.setScenario(scenario);
+        inventory.buildMolecules();
+        return inventory;
+    }
+
+    @Benchmark
+    public IInventory buildMolecules() {
+        return newInventory();
+    }
+
+    @Benchmark
+    public TestDataSet generate(Suite suite) {
+        TestDataSet dataSet = new TestDataSet(newInventory(), scenario);
+        dataSet.buildTestCases();
+        suite.count(dataSet);
+        return dataSet;
+    }
+}
@@ -0,0 +1,84 @@
+package com.rmn.pairwise.benchmarks;
+
+import com.rmn.pairwise.IInventory;
+import com.rmn.pairwise.PairwiseInventory;
+import com.rmn.pairwise.PairwiseInventoryFactory;
+import com.rmn.pairwise.Scenario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steps of the algorithm that happen once per test set: picking the best molecule and marking a test set's
+ * molecules as used. Both are measured against an inventory that is already half way through generating its test sets,
+ * which is where they spend most of their time in a real run
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InventoryBenchmark {
+
+    @Param({ "10x3", "50x5", "100x10", "skewed" })
+    public String shape;
+
+    private Scenario scenario;
+    private IInventory inventory;
+    private int[] nextTestSet;
+
+    @Setup(Level.Trial)
+    public void setUpScenario() {
+        scenario = PairwiseInventoryFactory.generateScenario(SyntheticScenarios.forShape(shape));
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpInventory() {
+        //Generate the full suite once, then replay the first half of it into a fresh inventory
+        List<int[]> testSets = newInventory().getTestDataSet().getRawTestSets();
+        inventory = newInventory();
+        for (int i = 0; i < testSets.size() / 2; i++) {
+            inventory.updateAllCounts(testSets.get(i));
+        }
+        nextTestSet = testSets.get(testSets.size() / 2);
+    }
+
+    private IInventory newInventory() {
+        IInventory inventory = new PairwiseInventory();
+        inventory.setScenario(scenario);
+        inventory.buildMolecules();
+        return inventory;
+    }
+
+    @Benchmark
+    public int[] getBestMolecule() {
+        return inventory.getBestMolecule();
+    }
+
+    /**
+     * Applying the same test set over and over only uses its molecules once, but the counts and lookups are the same work
+     */
+    @Benchmark
+    public IInventory updateAllCounts() {
+        inventory.updateAllCounts(nextTestSet);
+        return inventory;
+    }
+
+    @Benchmark
+    public int numberMoleculesCaptured() {
+        return inventory.numberMoleculesCaptured(nextTestSet);
+    }
+}
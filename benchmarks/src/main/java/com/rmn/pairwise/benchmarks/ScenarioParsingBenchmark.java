@@ -0,0 +1,40 @@
+package com.rmn.pairwise.benchmarks;
+
+import com.rmn.pairwise.PairwiseInventoryFactory;
+import com.rmn.pairwise.Scenario;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to turn a scenario definition into a Scenario
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScenarioParsingBenchmark {
+
+    @Param({ "10x3", "50x5", "100x10", "skewed" })
+    public String shape;
+
+    private String contents;
+
+    @Setup
+    public void setUp() {
+        contents = SyntheticScenarios.forShape(shape);
+    }
+
+    @Benchmark
+    public Scenario generateScenario() {
+        return PairwiseInventoryFactory.generateScenario(contents);
+    }
+}
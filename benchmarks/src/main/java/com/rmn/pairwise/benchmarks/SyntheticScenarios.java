@@ -0,0 +1,56 @@
+package com.rmn.pairwise.benchmarks;
+
+/**
+ * Builds scenario definitions (in the same format PairwiseInventoryFactory reads) of a given shape, so benchmarks can be
+ * parameterized by size rather than checked-in files
+ */
+public final class SyntheticScenarios {
+    private SyntheticScenarios() { }
+
+    /**
+     * Returns the scenario for one of the named shapes:
+     *  "10x3", "50x5", "100x10" -- that many parameter sets, each with that many values
+     *  "skewed"                 -- 30 parameter sets: one with 40 values, four with 10, and the rest with 2
+     * @param shape
+     * @return
+     */
+    public static String forShape(String shape) {
+        if ("skewed".equals(shape)) {
+            int[] valueCounts = new int[30];
+            for (int i = 0; i < valueCounts.length; i++) {
+                valueCounts[i] = i == 0 ? 40 : (i < 5 ? 10 : 2);
+            }
+            return build(valueCounts);
+        }
+
+        String[] dimensions = shape.split("x");
+        if (dimensions.length != 2) {
+            throw new IllegalArgumentException("Unknown scenario shape: " + shape);
+        }
+        int[] valueCounts = new int[Integer.parseInt(dimensions[0])];
+        for (int i = 0; i < valueCounts.length; i++) {
+            valueCounts[i] = Integer.parseInt(dimensions[1]);
+        }
+        return build(valueCounts);
+    }
+
+    /**
+     * Returns a scenario with one parameter set per entry, each with the given number of values
+     * @param valueCounts
+     * @return
+     */
+    public static String build(int[] valueCounts) {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < valueCounts.length; i++) {
+            contents.append("Param").append(i).append(": ");
+            for (int j = 0; j < valueCounts[i]; j++) {
+                if (j > 0) {
+                    contents.append(", ");
+                }
+                contents.append('v').append(i).append('_').append(j);
+            }
+            contents.append('\n');
+        }
+        return contents.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.rmn.pairwise;
+
+import java.util.Arrays;
+
+/**
+ * A PairwiseInventory that also keeps, for every value, a bitmask of the values it still has an unused pair with. Scoring a
+ * candidate value while a test set is being built is then a few ANDs of its mask with the mask of the values placed so far,
+ * and a Long.bitCount() of each, rather than a coverage lookup per placed value scattered all over the coverage matrix.
+ *
+ * The masks are kept on top of everything PairwiseInventory keeps, not instead of any of it, so this always takes more memory:
+ * another (values x values) bits, or 2MB for 4,000 values. That pays off in speed on scenarios with many parameter sets and a
+ * modest number of values in all. PairwiseInventoryFactory never picks it; make one, set its Scenario and call
+ * buildMolecules(). The test sets it generates are the same as PairwiseInventory's
+ */
+public class BitsetPairwiseInventory extends PairwiseInventory implements ValueMaskScorer {
+
+    /**
+     * For each value, a bit for every value it makes an unused (and legal) pair with
+     */
+    private long[][] unusedPartners = null;
+
+    @Override
+    public void buildMolecules(int atomsPerMolecule) {
+        super.buildMolecules(atomsPerMolecule);
+        buildUnusedPartners();
+    }
+
+    @Override
+    public void processUnusedValues() {
+        super.processUnusedValues();
+        buildUnusedPartners();
+    }
+
+    private void buildUnusedPartners() {
+        int valueCount = getScenario().getParameterValuesCount();
+        long[][] unusedPartners = new long[valueCount][];
+        for (int value = 0; value < valueCount; value++) {
+            unusedPartners[value] = getScenario().getExclusions().newValueMask();
+        }
+        CoverageMatrix coverageMatrix = getCoverageMatrix();
+        MoleculeIndex moleculeIndex = getMoleculeIndex();
+        int[] atoms = new int[2];
+        for (int ordinal = coverageMatrix.nextUnused(0); ordinal >= 0; ordinal = coverageMatrix.nextUnused(ordinal + 1)) {
+            moleculeIndex.atomsOf(ordinal, atoms);
+            Exclusions.addToMask(unusedPartners[ atoms[0] ], atoms[1]);
+            Exclusions.addToMask(unusedPartners[ atoms[1] ], atoms[0]);
+        }
+        this.unusedPartners = unusedPartners;
+    }
+
+    @Override
+    public void updateAllCounts(int[] bestTestSet) {
+        super.updateAllCounts(bestTestSet);
+        for (int i = 0; i < bestTestSet.length - 1; ++i) {
+            for (int j = i + 1; j < bestTestSet.length; ++j) {
+                removePartners(bestTestSet[i], bestTestSet[j]);
+            }
+        }
+    }
+
+    @Override
+    public void markIllegal(int[] molecule) {
+        super.markIllegal(molecule);
+        //The constraints' molecules are marked before the masks are built, and the masks leave them out anyway
+        if (unusedPartners != null) {
+            removePartners(molecule[0], molecule[1]);
+        }
+    }
+
+    private void removePartners(int firstValue, int secondValue) {
+        unusedPartners[firstValue][secondValue >>> 6] &= ~(1L << secondValue);
+        unusedPartners[secondValue][firstValue >>> 6] &= ~(1L << firstValue);
+    }
+
+    @Override
+    public int numberMoleculesCaptured(int value, long[] placedValues) {
+        long[] partners = unusedPartners[value];
+        int moleculesCapturedCount = 0;
+        for (int word = 0; word < partners.length; word++) {
+            moleculesCapturedCount += Long.bitCount(partners[word] & placedValues[word]);
+        }
+        return moleculesCapturedCount;
+    }
+
+    /**
+     * Returns the values the given value still makes an unused pair with, as a mask. For tests
+     * @param value
+     * @return A copy
+     */
+    long[] getUnusedPartners(int value) {
+        return Arrays.copyOf(unusedPartners[value], unusedPartners[value].length);
+    }
+
+    @Override
+    public long getCoverageBytes() {
+        if (unusedPartners == null) {
+            return super.getCoverageBytes();
+        }
+        return super.getCoverageBytes() + 8L * unusedPartners.length * ((unusedPartners.length + 63) >>> 6);
+    }
+}
@@ -0,0 +1,214 @@
+package com.rmn.pairwise;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps another inventory so that getTestDataSet() is answered from a GenerationCache whenever the same suite has been generated
+ * before. On a hit, neither buildMolecules() nor buildTestCases() runs at all: the molecules aren't built until something
+ * actually asks about them. Asking builds them, and then marks the cached test sets' molecules as used, so the inventory
+ * answers the same way it would have if the suite had just been generated.
+ *
+ * Only getTestDataSet() is cached; everything else is passed straight through to the wrapped inventory
+ */
+public class CachingInventory implements IInventory {
+    private Logger log = LoggerFactory.getLogger( this.getClass() );
+
+    private final IInventory inventory;
+    private final GenerationCache cache;
+    private boolean built = false;
+
+    /**
+     * The test sets of the last cache hit, until the molecules are built and they've been marked as used
+     */
+    private List<int[]> cachedTestSets = null;
+
+    /**
+     * @param inventory The inventory that generates the test sets on a cache miss. Its molecules shouldn't be built yet
+     * @param cache
+     */
+    public CachingInventory(IInventory inventory, GenerationCache cache) {
+        this.inventory = inventory;
+        this.cache = cache;
+    }
+
+    public IInventory getInventory() { return inventory; }
+    public GenerationCache getCache() { return cache; }
+
+    /**
+     * Returns true once the wrapped inventory's molecules have been built
+     * @return
+     */
+    boolean isBuilt() { return built; }
+
+    private IInventory built() {
+        if (!built) {
+            inventory.buildMolecules();
+            built = true;
+            if (cachedTestSets != null) {
+                replay(cachedTestSets);
+                cachedTestSets = null;
+            }
+        }
+        return inventory;
+    }
+
+    /**
+     * Marks the molecules of a cached suite as used, the way generating it did. The suite covered every molecule it could, so
+     * whatever's left is what generating it gave up on as illegal
+     */
+    private void replay(List<int[]> testSets) {
+        for (int[] testSet: testSets) {
+            inventory.updateAllCounts(testSet);
+        }
+        List<int[]> leftOver = new ArrayList<int[]>();
+        for (Molecule molecule: inventory.getUnusedMolecules()) {
+            leftOver.add(molecule.getAtoms());
+        }
+        for (int[] molecule: leftOver) {
+            inventory.markIllegal(molecule);
+        }
+    }
+
+    @Override
+    public TestDataSet getTestDataSet() {
+        Scenario scenario = getScenario();
+        TestDataSet dataSet = new TestDataSet(this, scenario);
+        String key = GenerationCache.keyOf(scenario, inventory.getClass().getName(), inventory.getAtomsPerMolecule(), dataSet.getSeed(), dataSet.getCandidatePoolSize());
+
+        //Once the molecules are built, some of them may have been used already, so the cache doesn't apply any more
+        boolean fresh = !built;
+        List<int[]> testSets = fresh ? cache.load(key, scenario) : null;
+        if (testSets != null) {
+            log.debug("Using the cached test sets for {}", key);
+            dataSet.getRawTestSets().addAll(testSets);
+            cachedTestSets = testSets;
+        } else {
+            dataSet = new TestDataSet(built(), scenario);
+            dataSet.buildTestCases();
+            if (fresh) {
+                cache.store(key, scenario, dataSet.getRawTestSets());
+            }
+        }
+        dataSet.logFullCombinationCount();
+        return dataSet;
+    }
+
+    @Override
+    public TestDataSet getTestDataSet(List<Map<String, String>> existingTestSets) {
+        return built().getTestDataSet(existingTestSets);
+    }
+
+    @Override
+    public Iterator<int[]> getTestSetIterator() {
+        return built().getTestSetIterator();
+    }
+
+    @Override
+    public int numberMoleculesCaptured(int[] testSet) {
+        return built().numberMoleculesCaptured(testSet);
+    }
+
+    @Override
+    public int numberMoleculesCaptured(int value, int[] testSet, int[] ordering, int placedCount) {
+        return built().numberMoleculesCaptured(value, testSet, ordering, placedCount);
+    }
+
+    @Override
+    public int[] getBestMolecule() {
+        return built().getBestMolecule();
+    }
+
+    @Override
+    public void updateAllCounts(int[] bestTestSet) {
+        built().updateAllCounts(bestTestSet);
+    }
+
+    @Override
+    public void markIllegal(int[] molecule) {
+        built().markIllegal(molecule);
+    }
+
+    @Override
+    public void processUnusedValues() {
+        built().processUnusedValues();
+    }
+
+    /**
+     * Doesn't build anything: the molecules are built the first time something needs them, which a cache hit never does on
+     * its own
+     */
+    @Override
+    public void buildMolecules() { }
+
+    @Override
+    public boolean isUnusedMolecule(int firstAtom, int secondAtom) {
+        return built().isUnusedMolecule(firstAtom, secondAtom);
+    }
+
+    @Override
+    @Deprecated
+    public int[][] getUnusedMoleculesSearch() {
+        return built().getUnusedMoleculesSearch();
+    }
+
+    @Override
+    public List<Molecule> getUnusedMolecules() {
+        return built().getUnusedMolecules();
+    }
+
+    @Override
+    public int initMoleculeCount() {
+        return inventory.initMoleculeCount();
+    }
+
+    @Override
+    public int getMoleculeCount() {
+        return built().getMoleculeCount();
+    }
+
+    @Override
+    public List<Molecule> getAllMolecules() {
+        return built().getAllMolecules();
+    }
+
+    @Override
+    public long getFullCombinationCount() {
+        return inventory.getFullCombinationCount();
+    }
+
+    /**
+     * Zero until something makes the wrapped inventory build its molecules
+     */
+    @Override
+    public long getCoverageBytes() {
+        return built ? inventory.getCoverageBytes() : 0;
+    }
+
+    @Override
+    public void setScenario(Scenario scenario) {
+        inventory.setScenario(scenario);
+        built = false;
+        cachedTestSets = null;
+    }
+
+    @Override
+    public Scenario getScenario() {
+        return inventory.getScenario();
+    }
+
+    @Override
+    public void setAtomsPerMolecule(int atoms) {
+        inventory.setAtomsPerMolecule(atoms);
+    }
+
+    @Override
+    public int getAtomsPerMolecule() {
+        return inventory.getAtomsPerMolecule();
+    }
+}
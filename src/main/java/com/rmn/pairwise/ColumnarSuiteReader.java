@@ -0,0 +1,139 @@
+package com.rmn.pairwise;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a suite written by ColumnarSuiteWriter. The file is memory-mapped, and only the header (the parameter set names and
+ * their values) is decoded up front; rows are read straight out of the mapping as they're asked for, so opening even a very
+ * large suite costs next to nothing, and nothing per row is ever put on the heap.
+ *
+ * A reader is safe to share between threads once it's open
+ */
+public class ColumnarSuiteReader {
+    private final ByteBuffer buffer;
+    private final int rowCount;
+    private final String[] names;
+    private final String[][] values;
+    private final int[] widths;
+    private final int[] offsets;
+
+    private ColumnarSuiteReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt() != ColumnarSuiteWriter.MAGIC) {
+            throw new IOException("Not a columnar suite");
+        }
+        int version = buffer.getInt();
+        if (version != ColumnarSuiteWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported columnar suite version: " + version);
+        }
+        int columnCount = buffer.getInt();
+        this.rowCount = buffer.getInt();
+        this.names = new String[columnCount];
+        this.values = new String[columnCount][];
+        this.widths = new int[columnCount];
+        this.offsets = new int[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            names[column] = getString(buffer);
+            widths[column] = buffer.get();
+            values[column] = new String[ buffer.getInt() ];
+            for (int i = 0; i < values[column].length; i++) {
+                values[column][i] = getString(buffer);
+            }
+            long offset = buffer.getLong();
+            if (offset + (long) rowCount * widths[column] > buffer.limit()) {
+                throw new IOException("The columnar suite is truncated");
+            }
+            offsets[column] = (int) offset;
+        }
+    }
+
+    /**
+     * Maps the file into memory and reads its header
+     * @param file
+     * @return
+     * @throws IOException If the file can't be read, or isn't a columnar suite
+     */
+    public static ColumnarSuiteReader open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            //The mapping stays valid after the channel is closed
+            return new ColumnarSuiteReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (RuntimeException e) {
+            throw new IOException("Not a columnar suite: " + file, e);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public int getRowCount() { return rowCount; }
+
+    public int getColumnCount() { return names.length; }
+
+    /**
+     * The name of the parameter set in the given column
+     * @param column
+     * @return
+     */
+    public String getColumnName(int column) { return names[column]; }
+
+    /**
+     * Returns the column of the named parameter set, or -1 if there isn't one
+     * @param name
+     * @return
+     */
+    public int getColumn(String name) {
+        for (int column = 0; column < names.length; column++) {
+            if (names[column].equals(name)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The values of the parameter set in the given column, in parameter set order
+     * @param column
+     * @return
+     */
+    public String[] getValues(int column) { return values[column].clone(); }
+
+    /**
+     * Returns the index (within its parameter set) of the value in the given row and column, read straight from the mapping
+     * @param row
+     * @param column
+     * @return
+     */
+    public int getValueIndex(int row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + rowCount);
+        }
+        int width = widths[column];
+        int position = offsets[column] + row * width;
+        switch (width) {
+            case 1: return buffer.get(position) & 0xFF;
+            case 2: return buffer.getShort(position) & 0xFFFF;
+            default: return buffer.getInt(position);
+        }
+    }
+
+    /**
+     * Returns the value in the given row and column
+     * @param row
+     * @param column
+     * @return
+     */
+    public String getValue(int row, int column) {
+        return values[column][ getValueIndex(row, column) ];
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[ buffer.getInt() ];
+        buffer.get(bytes);
+        return new String(bytes, ColumnarSuiteWriter.CHARSET);
+    }
+}
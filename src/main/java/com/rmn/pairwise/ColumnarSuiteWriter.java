@@ -0,0 +1,125 @@
+package com.rmn.pairwise;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Writes a generated suite in a compact, column-by-column binary format that ColumnarSuiteReader can memory-map and read in
+ * place. Instead of a map per row, the file holds each parameter set's values once (its dictionary) and, for every row, the
+ * index of the row's value in that dictionary, packed into as few bytes as the parameter set needs.
+ *
+ * Layout (big-endian; strings are an int byte count followed by UTF-8):
+ *  int     magic ("PWCS")
+ *  int     format version
+ *  int     column count (one column per parameter set)
+ *  int     row count
+ *  for each column:
+ *    string  parameter set name
+ *    byte    bytes per value index: 1, 2 or 4
+ *    int     value count
+ *    string  each value, in parameter set order
+ *    long    offset of the column's row data from the start of the file
+ *  the row data, one column after another: row count value indexes per column
+ *
+ * Storing the rows a column at a time means a harness that only cares about one parameter set reads one contiguous block
+ */
+public class ColumnarSuiteWriter {
+    static final int MAGIC = 0x50574353; // "PWCS"
+    static final int FORMAT_VERSION = 1;
+    static final String CHARSET = "UTF-8";
+
+    private ColumnarSuiteWriter() { }
+
+    /**
+     * Writes the raw test sets to the file, replacing anything already there
+     * @param scenario The Scenario the test sets were generated from
+     * @param testSets Raw test sets, as TestDataSet.getRawTestSets() returns them
+     * @param file
+     * @throws IOException
+     * @throws IllegalArgumentException If a parameter set has no values
+     */
+    public static void write(Scenario scenario, List<int[]> testSets, File file) throws IOException {
+        int columnCount = scenario.getParameterSetCount();
+        int rowCount = testSets.size();
+
+        //Encode the header first, so the offsets of the row data are known before anything is written
+        byte[][] names = new byte[columnCount][];
+        byte[][][] values = new byte[columnCount][][];
+        int[] widths = new int[columnCount];
+        long size = 16;
+        for (int column = 0; column < columnCount; column++) {
+            ParameterSet<?> parameterSet = scenario.getParameterSet(column);
+            if (parameterSet.getCount() == 0) {
+                //There's no first value to store the others relative to, and no row could have a value here anyway
+                throw new IllegalArgumentException("The parameter set " + parameterSet.getName() + " has no values");
+            }
+            names[column] = encode(parameterSet.getName());
+            values[column] = new byte[parameterSet.getCount()][];
+            for (int i = 0; i < parameterSet.getCount(); i++) {
+                values[column][i] = encode(String.valueOf(parameterSet.getValue(i)));
+                size += 4 + values[column][i].length;
+            }
+            widths[column] = widthFor(parameterSet.getCount());
+            size += 4 + names[column].length + 1 + 4 + 8;
+        }
+        long[] offsets = new long[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            offsets[column] = size;
+            size += (long) rowCount * widths[column];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The suite takes " + size + " bytes, which is too big to map into memory");
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(columnCount).putInt(rowCount);
+            for (int column = 0; column < columnCount; column++) {
+                putString(buffer, names[column]);
+                buffer.put((byte) widths[column]);
+                buffer.putInt(values[column].length);
+                for (byte[] value: values[column]) {
+                    putString(buffer, value);
+                }
+                buffer.putLong(offsets[column]);
+            }
+
+            int[][] legalValues = scenario.getLegalValues();
+            for (int column = 0; column < columnCount; column++) {
+                int firstValue = legalValues[column][0];
+                for (int[] testSet: testSets) {
+                    int index = testSet[column] - firstValue;
+                    switch (widths[column]) {
+                        case 1: buffer.put((byte) index); break;
+                        case 2: buffer.putShort((short) index); break;
+                        default: buffer.putInt(index);
+                    }
+                }
+            }
+            buffer.force();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    static int widthFor(int valueCount) {
+        return valueCount <= 0x100 ? 1 : valueCount <= 0x10000 ? 2 : 4;
+    }
+
+    private static byte[] encode(String string) throws UnsupportedEncodingException {
+        return String.valueOf(string).getBytes(CHARSET);
+    }
+
+    private static void putString(MappedByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+}
@@ -0,0 +1,170 @@
+package com.rmn.pairwise;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Everything about a Scenario that generating test sets needs but never changes: the frozen Scenario itself, the index of its
+ * molecules, and the state every run starts from (the molecules the constraints rule out already marked as used, and the
+ * number of unused molecules each value is in). Building it is the expensive part; after that it's read-only, so one model can
+ * be shared by any number of PairwiseGenerator runs on any number of threads
+ */
+public class CompiledModel {
+    private static final Logger log = LoggerFactory.getLogger(CompiledModel.class);
+
+    private final Scenario scenario;
+    private final int atomsPerMolecule;
+    private final MoleculeIndex moleculeIndex;
+    private final CoverageMatrix startingCoverage;
+    private final int[] startingCounts;
+
+    /**
+     * Compiles the pairs of the Scenario
+     * @param scenario
+     */
+    public CompiledModel(Scenario scenario) {
+        this(scenario, 2);
+    }
+
+    /**
+     * Compiles the molecules of the Scenario with the given number of atoms. The Scenario is frozen if it isn't already, since
+     * the model would be wrong as soon as it changed
+     * @param scenario
+     * @param atomsPerMolecule As for OrderNInventory, this is capped at the number of parameter sets
+     */
+    public CompiledModel(Scenario scenario, int atomsPerMolecule) {
+        scenario.freeze();
+        int effectiveAtomsPerMolecule = Math.min(atomsPerMolecule, Math.max(scenario.getParameterSetCount(), 2));
+        if (effectiveAtomsPerMolecule < atomsPerMolecule) {
+            log.warn("There are only {} parameter sets, so molecules will have {} atoms", scenario.getParameterSetCount(), effectiveAtomsPerMolecule);
+        }
+        this.scenario = scenario;
+        this.atomsPerMolecule = effectiveAtomsPerMolecule;
+        this.moleculeIndex = new MoleculeIndex(scenario, effectiveAtomsPerMolecule);
+
+        this.startingCoverage = new CoverageMatrix(moleculeIndex);
+        this.startingCounts = markExcluded(scenario, moleculeIndex, startingCoverage, null);
+        log.debug("Compiled {} molecules, {} of them unused", moleculeIndex.getMoleculeCount(), startingCoverage.getUnusedCount());
+    }
+
+    public Scenario getScenario() { return scenario; }
+    public int getAtomsPerMolecule() { return atomsPerMolecule; }
+    public MoleculeIndex getMoleculeIndex() { return moleculeIndex; }
+
+    /**
+     * The number of molecules a generated suite has to cover, which leaves out the ones the constraints rule out
+     * @return
+     */
+    public int getCoverableMoleculeCount() { return startingCoverage.getUnusedCount(); }
+
+    /**
+     * The coverage every run starts from. Never modify it; copy it
+     * @return
+     */
+    CoverageMatrix getStartingCoverage() { return startingCoverage; }
+
+    /**
+     * For each value, the number of molecules in the starting coverage it's in. Never modify it; copy it
+     * @return
+     */
+    int[] getStartingCounts() { return startingCounts; }
+
+    /**
+     * Roughly how many molecules each task works through when the excluded molecules are marked on an executor
+     */
+    private static final int MOLECULES_PER_TASK = 1 << 16;
+
+    /**
+     * Marks the molecules the Scenario's constraints rule out as used, and counts how many of the rest each value is in. This is
+     * the one pass over every molecule that setting up a run needs; with an executor, ranges of ordinals are worked through on
+     * its threads, each with counts of its own, and put together at the end
+     * @param scenario
+     * @param moleculeIndex
+     * @param coverage A matrix with every molecule still unused
+     * @param executor Null to do it all on the calling thread
+     * @return The number of unused molecules each value is in
+     */
+    static int[] markExcluded(Scenario scenario, MoleculeIndex moleculeIndex, CoverageMatrix coverage, ExecutorService executor) {
+        int moleculeCount = moleculeIndex.getMoleculeCount();
+        if (executor == null || moleculeCount <= MOLECULES_PER_TASK) {
+            ExcludedRange range = new ExcludedRange(scenario, moleculeIndex, 0, moleculeCount);
+            range.run();
+            range.markUsed(coverage);
+            return range.counts;
+        }
+
+        List<Future<ExcludedRange>> futures = new ArrayList<Future<ExcludedRange>>();
+        for (int from = 0; from < moleculeCount; from += MOLECULES_PER_TASK) {
+            final ExcludedRange range = new ExcludedRange(scenario, moleculeIndex, from, Math.min(from + MOLECULES_PER_TASK, moleculeCount));
+            futures.add(executor.submit(new Callable<ExcludedRange>() {
+                @Override
+                public ExcludedRange call() {
+                    range.run();
+                    return range;
+                }
+            }));
+        }
+        int[] counts = new int[scenario.getParameterValuesCount()];
+        for (Future<ExcludedRange> future: futures) {
+            ExcludedRange range = Futures.waitFor(future, "marking excluded molecules");
+            range.markUsed(coverage);
+            for (int value = 0; value < counts.length; value++) {
+                counts[value] += range.counts[value];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * One range of ordinals: the counts for the molecules in it that aren't excluded, and the ordinals of the ones that are.
+     * The coverage is only touched afterwards, on one thread, since neighbouring ranges can share a word of it
+     */
+    private static class ExcludedRange implements MoleculeIndex.Visitor {
+        private final MoleculeIndex moleculeIndex;
+        private final Exclusions exclusions;
+        private final int fromOrdinal;
+        private final int toOrdinal;
+        private final int[] counts;
+        private int[] excluded = new int[0];
+        private int excludedCount = 0;
+
+        ExcludedRange(Scenario scenario, MoleculeIndex moleculeIndex, int fromOrdinal, int toOrdinal) {
+            this.moleculeIndex = moleculeIndex;
+            this.exclusions = scenario.getExclusions();
+            this.fromOrdinal = fromOrdinal;
+            this.toOrdinal = toOrdinal;
+            this.counts = new int[scenario.getParameterValuesCount()];
+        }
+
+        void run() {
+            moleculeIndex.forEachMolecule(fromOrdinal, toOrdinal, this);
+        }
+
+        @Override
+        public void visit(int ordinal, int[] atoms) {
+            if (!exclusions.isEmpty() && exclusions.excludesAny(atoms)) {
+                if (excludedCount == excluded.length) {
+                    excluded = Arrays.copyOf(excluded, Math.max(16, 2 * excludedCount));
+                }
+                excluded[excludedCount++] = ordinal;
+                return;
+            }
+            for (int atom: atoms) {
+                ++counts[atom];
+            }
+        }
+
+        void markUsed(CoverageMatrix coverage) {
+            for (int k = 0; k < excludedCount; k++) {
+                coverage.markUsed(excluded[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.rmn.pairwise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule about which values can't be tested together, such as "Browser = Safari => OS != Windows". Whenever the "if"
+ * parameter set has one of the "if" values, the "then" parameter set has to have one of the "then" values. Either side can
+ * list several values ("Browser = Safari, Chrome") and either side can be negated with "!=" ("any value but these").
+ *
+ * A Constraint only holds names and values as they were written. They're matched up with the Scenario's parameter sets when
+ * the Scenario compiles its Exclusions, so constraints can be added before the parameter sets they mention
+ */
+public class Constraint {
+    /**
+     * Separates the "if" and "then" sides of a constraint in the input format
+     */
+    public static final String IMPLIES = "=>";
+
+    private final String ifParameter;
+    private final boolean ifNegated;
+    private final List<String> ifValues;
+    private final String thenParameter;
+    private final boolean thenNegated;
+    private final List<String> thenValues;
+
+    public Constraint(String ifParameter, boolean ifNegated, List<String> ifValues,
+                      String thenParameter, boolean thenNegated, List<String> thenValues) {
+        this.ifParameter = ifParameter;
+        this.ifNegated = ifNegated;
+        this.ifValues = new ArrayList<String>(ifValues);
+        this.thenParameter = thenParameter;
+        this.thenNegated = thenNegated;
+        this.thenValues = new ArrayList<String>(thenValues);
+    }
+
+    public String getIfParameter() { return ifParameter; }
+    public boolean isIfNegated() { return ifNegated; }
+    public List<String> getIfValues() { return ifValues; }
+    public String getThenParameter() { return thenParameter; }
+    public boolean isThenNegated() { return thenNegated; }
+    public List<String> getThenValues() { return thenValues; }
+
+    /**
+     * Excludes every pair of values this constraint rules out: each value matching the "if" side, with each value of the
+     * "then" parameter set that doesn't match the "then" side
+     * @param scenario
+     * @param exclusions
+     * @throws IllegalArgumentException If a parameter set or value isn't in the Scenario, or both sides name the same set
+     */
+    void addExclusions(Scenario scenario, Exclusions exclusions) {
+        int ifSet = findParameterSet(scenario, ifParameter);
+        int thenSet = findParameterSet(scenario, thenParameter);
+        if (ifSet == thenSet) {
+            throw new IllegalArgumentException("Both sides of the constraint [" + this + "] are about " + ifParameter);
+        }
+        boolean[] ifMatches = matchValues(scenario, ifSet, ifValues, ifNegated);
+        boolean[] thenMatches = matchValues(scenario, thenSet, thenValues, thenNegated);
+
+        int[][] legalValues = scenario.getLegalValues();
+        for (int i = 0; i < ifMatches.length; i++) {
+            if (!ifMatches[i]) {
+                continue;
+            }
+            for (int j = 0; j < thenMatches.length; j++) {
+                if (!thenMatches[j]) {
+                    exclusions.exclude(legalValues[ifSet][i], legalValues[thenSet][j]);
+                }
+            }
+        }
+    }
+
+    private int findParameterSet(Scenario scenario, String name) {
+        for (int i = 0; i < scenario.getParameterSets().size(); i++) {
+            if (name.equals(scenario.getParameterSet(i).getName())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("The constraint [" + this + "] refers to an unknown parameter set: " + name);
+    }
+
+    private boolean[] matchValues(Scenario scenario, int set, List<String> values, boolean negated) {
+        ParameterSet<?> parameterSet = scenario.getParameterSet(set);
+        List<String> setValues = new ArrayList<String>();
+        for (Object value: parameterSet.getParameterValues()) {
+            setValues.add(String.valueOf(value));
+        }
+        for (String value: values) {
+            if (!setValues.contains(value)) {
+                throw new IllegalArgumentException("The constraint [" + this + "] refers to an unknown value of " + parameterSet.getName() + ": " + value);
+            }
+        }
+
+        boolean[] matches = new boolean[setValues.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = values.contains(setValues.get(i)) != negated;
+        }
+        return matches;
+    }
+
+    @Override
+    public String toString() {
+        return clauseToString(ifParameter, ifNegated, ifValues) + " " + IMPLIES + " " + clauseToString(thenParameter, thenNegated, thenValues);
+    }
+
+    private static String clauseToString(String parameter, boolean negated, List<String> values) {
+        StringBuilder builder = new StringBuilder(parameter).append(negated ? " != " : " = ");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(values.get(i));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package com.rmn.pairwise;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Checks a suite's coverage on its own, without generating anything: every row is broken into its molecules, and each molecule's
+ * hits are counted. Works for any suite, generated here or written by hand, and for pairs or any other size of molecule.
+ *
+ * Rows are streamed, so a suite never has to be held in memory as a whole (let alone as maps): all that's kept is one int
+ * counter per molecule. With an executor, rows are counted in batches on all of its threads at once. The counters are split
+ * into stripes with a lock each, and a batch adds up its hits one stripe at a time, so threads only wait on each other when they
+ * reach the same stripe at the same moment
+ */
+public class CoverageAnalyzer {
+    private static final Logger log = LoggerFactory.getLogger(CoverageAnalyzer.class);
+
+    /**
+     * The number of stripes the counters are split into. Neighbouring counters share a stripe in blocks of 64, so that two
+     * stripes never share a cache line
+     */
+    private static final int STRIPE_COUNT = 64;
+
+    /**
+     * Roughly how many molecules are counted in each batch of rows
+     */
+    private static final int MOLECULES_PER_BATCH = 1 << 16;
+
+    private final CompiledModel model;
+    private final int parameterSetCount;
+    private final int atomsPerMolecule;
+    private final int batchRows;
+    private final Object[] stripeLocks = new Object[STRIPE_COUNT];
+    private ExecutorService executor = null;
+
+    /**
+     * Counts pairs
+     * @param scenario
+     */
+    public CoverageAnalyzer(Scenario scenario) {
+        this(new CompiledModel(scenario));
+    }
+
+    /**
+     * Counts molecules of the given number of atoms
+     * @param scenario
+     * @param atomsPerMolecule
+     */
+    public CoverageAnalyzer(Scenario scenario, int atomsPerMolecule) {
+        this(new CompiledModel(scenario, atomsPerMolecule));
+    }
+
+    public CoverageAnalyzer(CompiledModel model) {
+        this.model = model;
+        this.parameterSetCount = model.getScenario().getParameterSetCount();
+        this.atomsPerMolecule = model.getAtomsPerMolecule();
+        long moleculesPerRow = parameterSetCount < atomsPerMolecule ? 0 : choose(parameterSetCount, atomsPerMolecule);
+        this.batchRows = (int) Math.max(1, Math.min(MOLECULES_PER_BATCH / Math.max(moleculesPerRow, 1), MOLECULES_PER_BATCH));
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            stripeLocks[stripe] = new Object();
+        }
+    }
+
+    public CompiledModel getModel() { return model; }
+
+    public ExecutorService getExecutor() { return executor; }
+
+    /**
+     * Counts the rows on the given executor instead of on the calling thread. The executor belongs to the caller, and is never
+     * shut down here
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+    /**
+     * Analyzes a suite held in memory, such as TestDataSet.getRawTestSets()
+     * @param rows Raw test sets
+     * @return
+     * @throws IllegalArgumentException If a row doesn't have one value of each parameter set, in parameter set order
+     */
+    public CoverageReport analyze(Collection<int[]> rows) {
+        return analyze(rows.iterator());
+    }
+
+    /**
+     * Analyzes a suite one row at a time. Each row is copied as soon as it's handed over, so the iterator can reuse its array
+     * @param rows Raw test sets
+     * @return
+     * @throws IllegalArgumentException If a row doesn't have one value of each parameter set, in parameter set order
+     */
+    public CoverageReport analyze(Iterator<int[]> rows) {
+        int[] hitCounts = new int[ model.getMoleculeIndex().getMoleculeCount() ];
+        int[] positions = model.getScenario().getParameterPositions();
+        long rowCount = 0;
+
+        Queue<Future<?>> futures = new ArrayDeque<Future<?>>();
+        int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        int[] batch = new int[ batchRows * parameterSetCount ];
+        int batchCount = 0;
+        while (rows.hasNext()) {
+            int[] row = rows.next();
+            checkRow(row, positions, rowCount);
+            System.arraycopy(row, 0, batch, batchCount * parameterSetCount, parameterSetCount);
+            ++rowCount;
+            if (++batchCount < batchRows) {
+                continue;
+            }
+            if (executor == null) {
+                countBatch(hitCounts, batch, batchCount, false);
+            } else {
+                //Keep a bounded number of batches waiting, so a long stream doesn't pile up in memory
+                if (futures.size() >= maxInFlight) {
+                    Futures.waitFor(futures.poll(), "counting coverage");
+                }
+                futures.add(submitBatch(hitCounts, batch, batchCount));
+                batch = new int[ batchRows * parameterSetCount ];
+            }
+            batchCount = 0;
+        }
+        if (batchCount > 0) {
+            countBatch(hitCounts, batch, batchCount, executor != null);
+        }
+        while (!futures.isEmpty()) {
+            Futures.waitFor(futures.poll(), "counting coverage");
+        }
+
+        CoverageReport report = new CoverageReport(model, hitCounts, rowCount);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("%d rows cover %d of %d molecules", rowCount, report.getCoveredCount(), report.getCoverableCount()));
+        }
+        return report;
+    }
+
+    private void checkRow(int[] row, int[] positions, long rowNumber) {
+        if (row.length != parameterSetCount) {
+            throw new IllegalArgumentException(String.format("Row %d needs %d values, not %d", rowNumber, parameterSetCount, row.length));
+        }
+        for (int j = 0; j < row.length; j++) {
+            if (row[j] < 0 || row[j] >= positions.length || positions[ row[j] ] != j) {
+                throw new IllegalArgumentException(String.format("Value %d of row %d (%s) isn't a value of %s", row[j], rowNumber, Arrays.toString(row), model.getScenario().getParameterSet(j).getName()));
+            }
+        }
+    }
+
+    private Future<?> submitBatch(final int[] hitCounts, final int[] batch, final int batchCount) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                countBatch(hitCounts, batch, batchCount, true);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Works out the ordinal of every molecule of every row in the batch, then adds them to the counters. When other threads are
+     * counting too, the ordinals are first sorted into their stripes, so each stripe's lock is only taken once per batch
+     */
+    private void countBatch(int[] hitCounts, int[] batch, int batchCount, boolean shared) {
+        if (parameterSetCount < atomsPerMolecule) {
+            return;
+        }
+        MoleculeIndex moleculeIndex = model.getMoleculeIndex();
+        int[] ordinals = new int[ batchCount * (int) choose(parameterSetCount, atomsPerMolecule) ];
+        int ordinalCount = 0;
+        int[] combination = new int[atomsPerMolecule];
+        int[] atoms = new int[atomsPerMolecule];
+        for (int row = 0; row < batchCount; row++) {
+            int offset = row * parameterSetCount;
+            if (atomsPerMolecule == 2) {
+                for (int i = 0; i < parameterSetCount - 1; i++) {
+                    for (int j = i + 1; j < parameterSetCount; j++) {
+                        ordinals[ordinalCount++] = moleculeIndex.ordinalOf(batch[offset + i], batch[offset + j]);
+                    }
+                }
+                continue;
+            }
+            OrderNInventory.resetCombination(combination, atomsPerMolecule);
+            do {
+                //The values of a row go up with the parameter set, so the atoms come out in ascending order
+                for (int k = 0; k < atomsPerMolecule; k++) {
+                    atoms[k] = batch[offset + combination[k]];
+                }
+                ordinals[ordinalCount++] = moleculeIndex.ordinalOf(atoms);
+            } while (MoleculeIndex.nextCombination(combination, parameterSetCount));
+        }
+
+        if (!shared) {
+            for (int k = 0; k < ordinalCount; k++) {
+                ++hitCounts[ ordinals[k] ];
+            }
+            return;
+        }
+
+        int[] stripeStarts = new int[STRIPE_COUNT + 1];
+        for (int k = 0; k < ordinalCount; k++) {
+            ++stripeStarts[ stripeOf(ordinals[k]) + 1 ];
+        }
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            stripeStarts[stripe + 1] += stripeStarts[stripe];
+        }
+        int[] byStripe = new int[ordinalCount];
+        int[] next = Arrays.copyOf(stripeStarts, STRIPE_COUNT);
+        for (int k = 0; k < ordinalCount; k++) {
+            byStripe[ next[ stripeOf(ordinals[k]) ]++ ] = ordinals[k];
+        }
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            if (stripeStarts[stripe] == stripeStarts[stripe + 1]) {
+                continue;
+            }
+            synchronized (stripeLocks[stripe]) {
+                for (int k = stripeStarts[stripe]; k < stripeStarts[stripe + 1]; k++) {
+                    ++hitCounts[ byStripe[k] ];
+                }
+            }
+        }
+    }
+
+    private static int stripeOf(int ordinal) {
+        return (ordinal >>> 6) & (STRIPE_COUNT - 1);
+    }
+
+    private static long choose(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+}
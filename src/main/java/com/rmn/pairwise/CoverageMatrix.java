@@ -0,0 +1,120 @@
+package com.rmn.pairwise;
+
+/**
+ * Keeps track of which molecules are still unused, one bit per molecule. Only pairs of values from two different parameter
+ * sets can ever be a molecule, so instead of a [values x values] matrix this stores one block of |A| x |B| bits for each
+ * pair of parameter sets (A, B), packed one after the other in the order handed out by the MoleculeIndex. A scenario with
+ * 3,000 values spread over 100 parameter sets needs well under a megabyte here, instead of 36MB for the full int matrix
+ */
+public class CoverageMatrix {
+    private final MoleculeIndex moleculeIndex;
+    private final long[] unusedBits;
+    private int unusedCount;
+
+    /**
+     * Creates a matrix in which every molecule is still unused
+     * @param moleculeIndex The index for the Scenario the molecules come from
+     */
+    public CoverageMatrix(MoleculeIndex moleculeIndex) {
+        this.moleculeIndex = moleculeIndex;
+        int moleculeCount = moleculeIndex.getMoleculeCount();
+        this.unusedBits = new long[ (moleculeCount + 63) >>> 6 ];
+        for (int word = 0; word < moleculeCount >>> 6; word++) {
+            unusedBits[word] = -1L;
+        }
+        if ((moleculeCount & 63) != 0) {
+            unusedBits[moleculeCount >>> 6] = (1L << moleculeCount) - 1;
+        }
+        this.unusedCount = moleculeCount;
+    }
+
+    /**
+     * Creates a copy of another matrix, for the same Scenario
+     * @param other
+     */
+    public CoverageMatrix(CoverageMatrix other) {
+        this.moleculeIndex = other.moleculeIndex;
+        this.unusedBits = other.unusedBits.clone();
+        this.unusedCount = other.unusedCount;
+    }
+
+    /**
+     * Makes this matrix match another one for the same Scenario, without allocating anything
+     * @param other
+     */
+    public void copyFrom(CoverageMatrix other) {
+        if (other.moleculeIndex != moleculeIndex) {
+            throw new IllegalArgumentException("The matrices are for different molecule indexes");
+        }
+        System.arraycopy(other.unusedBits, 0, unusedBits, 0, unusedBits.length);
+        this.unusedCount = other.unusedCount;
+    }
+
+    /**
+     * The number of molecules that have not been used yet
+     * @return
+     */
+    public int getUnusedCount() { return unusedCount; }
+
+    /**
+     * Roughly how much heap the bits take up
+     * @return
+     */
+    public long getSizeInBytes() { return 8L * unusedBits.length; }
+
+    /**
+     * Returns true if the molecule made up of the two atoms has not been used yet. The atoms can be given in either order;
+     * two atoms from the same parameter set are never a molecule, so they are never unused
+     * @param firstAtom
+     * @param secondAtom
+     * @return
+     */
+    public boolean isUnused(int firstAtom, int secondAtom) {
+        return moleculeIndex.isMolecule(firstAtom, secondAtom) && isUnused(moleculeIndex.ordinalOf(firstAtom, secondAtom));
+    }
+
+    public boolean isUnused(int ordinal) {
+        return (unusedBits[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Marks the molecule made up of the two atoms as used
+     * @param firstAtom
+     * @param secondAtom
+     * @return true if the molecule had not been used before
+     */
+    public boolean markUsed(int firstAtom, int secondAtom) {
+        return moleculeIndex.isMolecule(firstAtom, secondAtom) && markUsed(moleculeIndex.ordinalOf(firstAtom, secondAtom));
+    }
+
+    public boolean markUsed(int ordinal) {
+        long mask = 1L << ordinal;
+        long word = unusedBits[ordinal >>> 6];
+        if ((word & mask) == 0) {
+            return false;
+        }
+        unusedBits[ordinal >>> 6] = word & ~mask;
+        --unusedCount;
+        return true;
+    }
+
+    /**
+     * Returns the ordinal of the first unused molecule at or after the given ordinal
+     * @param fromOrdinal
+     * @return The ordinal, or -1 if there are no unused molecules left from there on
+     */
+    public int nextUnused(int fromOrdinal) {
+        int word = fromOrdinal >>> 6;
+        if (word >= unusedBits.length) {
+            return -1;
+        }
+        long bits = unusedBits[word] & (-1L << fromOrdinal);
+        while (bits == 0) {
+            if (++word == unusedBits.length) {
+                return -1;
+            }
+            bits = unusedBits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
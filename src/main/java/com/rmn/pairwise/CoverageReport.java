@@ -0,0 +1,122 @@
+package com.rmn.pairwise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What CoverageAnalyzer found in a suite: how many of the molecules a suite has to cover it does cover, which ones it misses,
+ * and how many times each one was hit. Molecules the Scenario's constraints rule out don't have to be covered, so they're left
+ * out of everything except getExcludedHitCount()
+ */
+public class CoverageReport {
+    private final CompiledModel model;
+    private final int[] hitCounts;
+    private final long rowCount;
+    private final int coveredCount;
+    private final int redundantCount;
+    private final int maxHitCount;
+    private final long excludedHitCount;
+
+    CoverageReport(CompiledModel model, int[] hitCounts, long rowCount) {
+        this.model = model;
+        this.hitCounts = hitCounts;
+        this.rowCount = rowCount;
+
+        CoverageMatrix coverable = model.getStartingCoverage();
+        int coveredCount = 0;
+        int redundantCount = 0;
+        int maxHitCount = 0;
+        long excludedHitCount = 0;
+        for (int ordinal = 0; ordinal < hitCounts.length; ordinal++) {
+            if (!coverable.isUnused(ordinal)) {
+                excludedHitCount += hitCounts[ordinal];
+                continue;
+            }
+            if (hitCounts[ordinal] > 0) {
+                ++coveredCount;
+            }
+            if (hitCounts[ordinal] > 1) {
+                ++redundantCount;
+            }
+            maxHitCount = Math.max(maxHitCount, hitCounts[ordinal]);
+        }
+        this.coveredCount = coveredCount;
+        this.redundantCount = redundantCount;
+        this.maxHitCount = maxHitCount;
+        this.excludedHitCount = excludedHitCount;
+    }
+
+    public long getRowCount() { return rowCount; }
+
+    public int getAtomsPerMolecule() { return model.getAtomsPerMolecule(); }
+
+    /**
+     * The number of molecules the suite has to cover
+     * @return
+     */
+    public int getCoverableCount() { return model.getCoverableMoleculeCount(); }
+
+    public int getCoveredCount() { return coveredCount; }
+
+    public int getMissingCount() { return getCoverableCount() - coveredCount; }
+
+    /**
+     * Returns true if every molecule that has to be covered is
+     * @return
+     */
+    public boolean isComplete() { return coveredCount == getCoverableCount(); }
+
+    /**
+     * The fraction of the molecules covered, from 0 to 1
+     * @return
+     */
+    public double getCoverage() {
+        return getCoverableCount() == 0 ? 1 : (double) coveredCount / getCoverableCount();
+    }
+
+    /**
+     * The number of molecules covered more than once
+     * @return
+     */
+    public int getRedundantCount() { return redundantCount; }
+
+    /**
+     * The most times any one molecule was covered
+     * @return
+     */
+    public int getMaxHitCount() { return maxHitCount; }
+
+    /**
+     * The number of times the rows used a molecule the constraints rule out. Anything but zero means some rows break a constraint
+     * @return
+     */
+    public long getExcludedHitCount() { return excludedHitCount; }
+
+    /**
+     * Returns the number of rows the molecule appears in
+     * @param atoms The atoms of the molecule, in ascending order
+     * @return
+     */
+    public int getHitCount(int... atoms) {
+        if (atoms.length != model.getAtomsPerMolecule()) {
+            throw new IllegalArgumentException(String.format("A molecule needs %d atoms, not %d", model.getAtomsPerMolecule(), atoms.length));
+        }
+        return hitCounts[ model.getMoleculeIndex().ordinalOf(atoms) ];
+    }
+
+    /**
+     * Returns the molecules that aren't covered, in ordinal order
+     * @param limit The most to return, since a suite that's far from complete can miss a great many
+     * @return The atoms of each molecule
+     */
+    public List<int[]> getMissing(int limit) {
+        CoverageMatrix coverable = model.getStartingCoverage();
+        List<int[]> missing = new ArrayList<int[]>(Math.min(limit, getMissingCount()));
+        for (int ordinal = coverable.nextUnused(0); ordinal >= 0 && missing.size() < limit; ordinal = coverable.nextUnused(ordinal + 1)) {
+            if (hitCounts[ordinal] == 0) {
+                missing.add(model.getMoleculeIndex().getAtoms(ordinal));
+            }
+        }
+        return missing;
+    }
+}
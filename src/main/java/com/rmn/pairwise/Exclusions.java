@@ -0,0 +1,102 @@
+package com.rmn.pairwise;
+
+/**
+ * The compiled form of a Scenario's constraints: for every value, a bitmask of the values it can never appear with in a test
+ * set. Values are indexes into the flattened parameter values array, as everywhere else.
+ *
+ * A value with no exclusions doesn't get a mask at all, so a handful of constraints on a big scenario costs next to nothing.
+ * While a test set is being built, the values placed so far are kept in a mask of the same shape (see newValueMask()), so
+ * checking a candidate value against all of them is a few ANDs instead of a loop over the placed values
+ */
+public class Exclusions {
+    private final int valueCount;
+    private final long[][] excludedPartners;
+    private boolean empty = true;
+
+    public Exclusions(int valueCount) {
+        this.valueCount = valueCount;
+        this.excludedPartners = new long[valueCount][];
+    }
+
+    /**
+     * Marks the two values as never being allowed in the same test set (in either order)
+     * @param firstValue
+     * @param secondValue
+     */
+    public void exclude(int firstValue, int secondValue) {
+        addToMask(partnersOf(firstValue), secondValue);
+        addToMask(partnersOf(secondValue), firstValue);
+        empty = false;
+    }
+
+    /**
+     * Returns true if the two values can't be used in the same test set
+     * @param firstValue
+     * @param secondValue
+     * @return
+     */
+    public boolean isExcluded(int firstValue, int secondValue) {
+        long[] partners = excludedPartners[firstValue];
+        return partners != null && (partners[secondValue >>> 6] & (1L << secondValue)) != 0;
+    }
+
+    /**
+     * Returns true if any two of the values can't be used in the same test set
+     * @param values
+     * @return
+     */
+    public boolean excludesAny(int[] values) {
+        for (int k = 0; k < values.length - 1; k++) {
+            for (int l = k + 1; l < values.length; l++) {
+                if (isExcluded(values[k], values[l])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if no two values exclude each other, in which case there's nothing to check
+     * @return
+     */
+    public boolean isEmpty() { return empty; }
+
+    /**
+     * Returns true if the value can be added to a test set that already holds the values in the mask
+     * @param value
+     * @param placedValues A mask from newValueMask(), with the values placed so far added to it
+     * @return
+     */
+    public boolean isCompatible(int value, long[] placedValues) {
+        long[] partners = excludedPartners[value];
+        if (partners == null) {
+            return true;
+        }
+        for (int word = 0; word < partners.length; word++) {
+            if ((partners[word] & placedValues[word]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an empty mask with room for every value in the Scenario
+     * @return
+     */
+    public long[] newValueMask() {
+        return new long[ (valueCount + 63) >>> 6 ];
+    }
+
+    public static void addToMask(long[] mask, int value) {
+        mask[value >>> 6] |= 1L << value;
+    }
+
+    private long[] partnersOf(int value) {
+        if (excludedPartners[value] == null) {
+            excludedPartners[value] = newValueMask();
+        }
+        return excludedPartners[value];
+    }
+}
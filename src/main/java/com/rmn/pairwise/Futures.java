@@ -0,0 +1,36 @@
+package com.rmn.pairwise;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Waiting on work that was handed to an executor
+ */
+final class Futures {
+    private Futures() { }
+
+    /**
+     * Waits for the task to finish and returns its result. Whatever the task threw is rethrown as it was if it's unchecked, and
+     * wrapped in an IllegalStateException if not. Being interrupted while waiting is passed on, and reported the same way
+     * @param future
+     * @param task What the task was doing ("building molecules"), for the exception messages
+     * @param <T>
+     * @return
+     */
+    static <T> T waitFor(Future<T> future, String task) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while " + task, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Failed while " + task, e.getCause());
+        }
+    }
+}
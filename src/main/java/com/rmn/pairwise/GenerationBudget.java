@@ -0,0 +1,64 @@
+package com.rmn.pairwise;
+
+/**
+ * Limits on how long TestDataSet.buildTestCases(GenerationBudget) keeps going: a number of test sets, an amount of time, and
+ * a fraction of the molecules to cover. Generation stops at whichever limit it reaches first, or when every molecule is
+ * covered. Budgets are immutable; each with method returns a new one
+ */
+public class GenerationBudget {
+    private static final GenerationBudget UNLIMITED = new GenerationBudget(Integer.MAX_VALUE, Long.MAX_VALUE, 1.0);
+
+    private final int maxRows;
+    private final long maxMillis;
+    private final double targetCoverage;
+
+    private GenerationBudget(int maxRows, long maxMillis, double targetCoverage) {
+        this.maxRows = maxRows;
+        this.maxMillis = maxMillis;
+        this.targetCoverage = targetCoverage;
+    }
+
+    /**
+     * A budget with no limits, which covers every molecule, as buildTestCases() does
+     * @return
+     */
+    public static GenerationBudget unlimited() { return UNLIMITED; }
+
+    /**
+     * @param maxRows The most test sets to generate
+     * @return
+     */
+    public GenerationBudget withMaxRows(int maxRows) {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("The row limit can't be negative: " + maxRows);
+        }
+        return new GenerationBudget(maxRows, maxMillis, targetCoverage);
+    }
+
+    /**
+     * @param maxMillis How long to keep generating. The test set in progress when time runs out is still finished, so this can
+     *                  be overrun by the time it takes to generate one test set
+     * @return
+     */
+    public GenerationBudget withMaxMillis(long maxMillis) {
+        if (maxMillis < 0) {
+            throw new IllegalArgumentException("The time limit can't be negative: " + maxMillis);
+        }
+        return new GenerationBudget(maxRows, maxMillis, targetCoverage);
+    }
+
+    /**
+     * @param targetCoverage The fraction of the molecules left to cover (when generation starts) to stop at, from 0 to 1
+     * @return
+     */
+    public GenerationBudget withTargetCoverage(double targetCoverage) {
+        if (!(targetCoverage >= 0 && targetCoverage <= 1)) {
+            throw new IllegalArgumentException("The target coverage has to be between 0 and 1, not " + targetCoverage);
+        }
+        return new GenerationBudget(maxRows, maxMillis, targetCoverage);
+    }
+
+    public int getMaxRows() { return maxRows; }
+    public long getMaxMillis() { return maxMillis; }
+    public double getTargetCoverage() { return targetCoverage; }
+}
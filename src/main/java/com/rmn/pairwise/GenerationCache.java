@@ -0,0 +1,267 @@
+package com.rmn.pairwise;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps generated test sets on local disk, so that generating the same suite again (same parameter sets and values in the same
+ * order, same constraints, same seed and settings) is just a file read. See CachingInventory, which is how it's normally used.
+ *
+ * Each suite is one small binary file named after its key: a header, then every raw test set with each value index packed
+ * into 1, 2 or 4 bytes, depending on how many values the Scenario has. Reading a suite touches its file, and once the files add
+ * up to more than the size limit, the least recently used ones are deleted.
+ *
+ * Bump FORMAT_VERSION whenever a change to the generator would produce different test sets for the same input, so that old
+ * entries stop matching
+ */
+public class GenerationCache {
+    private static final Logger log = LoggerFactory.getLogger(GenerationCache.class);
+
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x50575343; // "PWSC"
+    private static final String SUFFIX = ".pws";
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory Where the cached suites are kept. It's created if it doesn't exist
+     * @param maxBytes The most disk space the cached suites can take up before the least recently used ones are deleted
+     */
+    public GenerationCache(File directory, long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The cache size can't be negative: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public File getDirectory() { return directory; }
+    public long getMaxBytes() { return maxBytes; }
+
+    /**
+     * Returns the key for a suite generated from the given Scenario and settings. Everything that changes the generated test
+     * sets goes into it: the name and values of every parameter set, in order, the constraints, the kind of inventory and the
+     * number of atoms per molecule, the seed and the candidate pool size
+     * @return A hex-encoded SHA-256 hash
+     */
+    public static String keyOf(Scenario scenario, String inventoryType, int atomsPerMolecule, long seed, int candidatePoolSize) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(inventoryType);
+            out.writeInt(atomsPerMolecule);
+            out.writeLong(seed);
+            out.writeInt(candidatePoolSize);
+            out.writeInt(scenario.getParameterSetCount());
+            for (ParameterSet<?> parameterSet: scenario.getParameterSets()) {
+                out.writeUTF(String.valueOf(parameterSet.getName()));
+                out.writeInt(parameterSet.getCount());
+                for (Object value: parameterSet.getParameterValues()) {
+                    out.writeUTF(String.valueOf(value));
+                }
+            }
+            out.writeInt(scenario.getConstraints().size());
+            for (Constraint constraint: scenario.getConstraints()) {
+                out.writeUTF(constraint.toString());
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write to memory", e);
+        }
+
+        byte[] hash = sha256().digest(bytes.toByteArray());
+        StringBuilder key = new StringBuilder(hash.length * 2);
+        for (byte b: hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the raw test sets stored under the key, or null if there aren't any (or they can't be read, in which case the
+     * entry is deleted)
+     * @param key
+     * @param scenario The Scenario the test sets belong to, used to check the entry
+     * @return
+     */
+    public List<int[]> load(String key, Scenario scenario) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            List<int[]> testSets = read(file, scenario);
+            file.setLastModified(System.currentTimeMillis());
+            log.debug("Loaded {} test sets from {}", testSets.size(), file);
+            return testSets;
+        } catch (IOException e) {
+            log.warn("Discarding unreadable cache entry " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the raw test sets under the key, then deletes the least recently used entries if the cache is over its size limit.
+     * Failing to write is logged, not thrown--the suite was generated either way
+     * @param key
+     * @param scenario The Scenario the test sets belong to
+     * @param testSets
+     */
+    public void store(String key, Scenario scenario, List<int[]> testSets) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.warn("Unable to create the cache directory {}", directory);
+            return;
+        }
+        File file = fileFor(key);
+        File temp = null;
+        try {
+            //A unique name, so two threads or two JVMs storing the same key never write the same file
+            temp = File.createTempFile(key, ".tmp", directory);
+            write(temp, scenario, testSets);
+            //Rename into place, so a reader never sees half a file
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + temp + " to " + file);
+                }
+            }
+            log.debug("Stored {} test sets in {}", testSets.size(), file);
+        } catch (IOException e) {
+            log.warn("Unable to store cache entry " + file, e);
+            if (temp != null) {
+                temp.delete();
+            }
+            return;
+        }
+        evict();
+    }
+
+    File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its size limit
+     */
+    void evict() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file: files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : first.getName().compareTo(second.getName());
+            }
+        });
+        for (int i = 0; i < files.length && totalBytes > maxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                log.debug("Evicted {}", files[i]);
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private static void write(File file, Scenario scenario, List<int[]> testSets) throws IOException {
+        int width = ColumnarSuiteWriter.widthFor(scenario.getParameterValuesCount());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(scenario.getParameterSetCount());
+            out.writeInt(testSets.size());
+            out.writeByte(width);
+            for (int[] testSet: testSets) {
+                for (int value: testSet) {
+                    switch (width) {
+                        case 1: out.writeByte(value); break;
+                        case 2: out.writeShort(value); break;
+                        default: out.writeInt(value);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static List<int[]> read(File file, Scenario scenario) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a cache entry of version " + FORMAT_VERSION);
+            }
+            int columnCount = in.readInt();
+            int rowCount = in.readInt();
+            int width = in.readUnsignedByte();
+            if (columnCount != scenario.getParameterSetCount() || rowCount < 0 || width != ColumnarSuiteWriter.widthFor(scenario.getParameterValuesCount())) {
+                throw new IOException("The entry doesn't match the scenario");
+            }
+
+            int[] parameterPositions = scenario.getParameterPositions();
+            List<int[]> testSets = new ArrayList<int[]>(rowCount);
+            for (int row = 0; row < rowCount; row++) {
+                int[] testSet = new int[columnCount];
+                for (int column = 0; column < columnCount; column++) {
+                    int value;
+                    switch (width) {
+                        case 1: value = in.readUnsignedByte(); break;
+                        case 2: value = in.readUnsignedShort(); break;
+                        default: value = in.readInt();
+                    }
+                    if (value < 0 || value >= parameterPositions.length || parameterPositions[value] != column) {
+                        throw new IOException("The entry doesn't match the scenario");
+                    }
+                    testSet[column] = value;
+                }
+                testSets.add(testSet);
+            }
+            return testSets;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM is required to support SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.rmn.pairwise;
+
+/**
+ * Gets told what TestDataSet is doing while it generates test sets, for metrics and monitoring. Add one with
+ * TestDataSet.addListener(). The calls are made on the generating thread, in between test sets, so anything slow here slows
+ * generation down. GenerationMetrics is a ready-made listener that adds everything up
+ */
+public interface GenerationListener {
+
+    /**
+     * Called before the first test set is generated
+     * @param unusedMoleculeCount The number of molecules the test sets have to cover
+     * @param coverageBytes See IInventory.getCoverageBytes()
+     */
+    void generationStarted(int unusedMoleculeCount, long coverageBytes);
+
+    /**
+     * Called after each test set is generated and its molecules are marked as used
+     * @param testSet The new test set
+     * @param row What the test set cost, and where it left things. The same object is reused for every row, so copy anything
+     *            you want to keep
+     */
+    void testSetAdded(int[] testSet, RowMetrics row);
+
+    /**
+     * Called when no test set could be built around the best molecule without breaking a constraint, so it was given up on
+     * @param molecule
+     * @param unusedMoleculeCount The number of molecules still left to cover
+     */
+    void moleculeIllegal(int[] molecule, int unusedMoleculeCount);
+
+    /**
+     * Called once every molecule is covered
+     * @param rowCount The number of test sets generated
+     * @param nanos How long it took, from generationStarted()
+     */
+    void generationFinished(int rowCount, long nanos);
+}
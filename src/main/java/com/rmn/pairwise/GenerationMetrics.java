@@ -0,0 +1,109 @@
+package com.rmn.pairwise;
+
+import java.util.Arrays;
+
+/**
+ * A GenerationListener that adds up what it's told, for exporting to a metrics system once generation is done: totals for
+ * each step, the slowest test set, the most heap the coverage structures took, and how many molecules were left to cover after
+ * each test set (the convergence curve). Add it to a TestDataSet before generating; one per TestDataSet. It isn't thread-safe,
+ * so read it once generation is finished
+ */
+public class GenerationMetrics implements GenerationListener {
+    private int startingUnusedCount;
+    private int rowCount;
+    private int illegalCount;
+    private long generationNanos;
+    private long rowNanos;
+    private long slowestRowNanos;
+    private long bestMoleculeNanos;
+    private long singleTestSetNanos;
+    private long updateAllCountsNanos;
+    private long peakCoverageBytes;
+    private int[] unusedCounts = new int[16];
+
+    @Override
+    public void generationStarted(int unusedMoleculeCount, long coverageBytes) {
+        this.startingUnusedCount = unusedMoleculeCount;
+        this.peakCoverageBytes = Math.max(peakCoverageBytes, coverageBytes);
+    }
+
+    @Override
+    public void testSetAdded(int[] testSet, RowMetrics row) {
+        if (rowCount == unusedCounts.length) {
+            unusedCounts = Arrays.copyOf(unusedCounts, rowCount * 2);
+        }
+        unusedCounts[rowCount++] = row.getUnusedMoleculeCount();
+        rowNanos += row.getNanos();
+        slowestRowNanos = Math.max(slowestRowNanos, row.getNanos());
+        bestMoleculeNanos += row.getBestMoleculeNanos();
+        singleTestSetNanos += row.getSingleTestSetNanos();
+        updateAllCountsNanos += row.getUpdateAllCountsNanos();
+        peakCoverageBytes = Math.max(peakCoverageBytes, row.getCoverageBytes());
+    }
+
+    @Override
+    public void moleculeIllegal(int[] molecule, int unusedMoleculeCount) {
+        illegalCount++;
+    }
+
+    @Override
+    public void generationFinished(int rowCount, long nanos) {
+        this.generationNanos += nanos;
+    }
+
+    /**
+     * The number of molecules there were to cover when generation started
+     * @return
+     */
+    public int getStartingUnusedCount() { return startingUnusedCount; }
+
+    public int getRowCount() { return rowCount; }
+
+    /**
+     * The number of molecules given up on because of the Scenario's constraints
+     * @return
+     */
+    public int getIllegalCount() { return illegalCount; }
+
+    /**
+     * The time from the start of generation to the end, in nanoseconds
+     * @return
+     */
+    public long getGenerationNanos() { return generationNanos; }
+
+    /**
+     * The time spent generating test sets, in nanoseconds. Unlike getGenerationNanos(), this leaves out molecules that were
+     * given up on, and anything done in between test sets
+     * @return
+     */
+    public long getRowNanos() { return rowNanos; }
+
+    public long getSlowestRowNanos() { return slowestRowNanos; }
+    public long getBestMoleculeNanos() { return bestMoleculeNanos; }
+    public long getSingleTestSetNanos() { return singleTestSetNanos; }
+    public long getUpdateAllCountsNanos() { return updateAllCountsNanos; }
+    public long getPeakCoverageBytes() { return peakCoverageBytes; }
+
+    /**
+     * The number of molecules left to cover after each test set, in order
+     * @return
+     */
+    public int[] getUnusedCounts() {
+        return Arrays.copyOf(unusedCounts, rowCount);
+    }
+
+    /**
+     * The fraction of the molecules covered after the given test set, from 0 to 1; the convergence curve, one row at a time
+     * @param row
+     * @return
+     */
+    public double getCoverage(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + rowCount);
+        }
+        if (startingUnusedCount == 0) {
+            return 1;
+        }
+        return 1 - (double) unusedCounts[row] / startingUnusedCount;
+    }
+}
@@ -0,0 +1,104 @@
+package com.rmn.pairwise;
+
+import java.util.List;
+
+/**
+ * What TestDataSet.buildTestCases(GenerationBudget) generated, and how far it got. The test sets are in the order they were
+ * generated in or, if TestDataSet.setPrioritizing() was on, in priority order: each one covers as many molecules the ones
+ * before it missed as any of the rest, so running only the first few still covers as much as possible
+ */
+public class GenerationResult {
+
+    /**
+     * Why generation stopped
+     */
+    public enum StopReason {
+        /** Every molecule was covered */
+        COVERED,
+        /** The budget's row limit was reached */
+        ROW_LIMIT,
+        /** The budget's time limit ran out */
+        TIME_LIMIT,
+        /** The budget's target coverage was reached */
+        COVERAGE_TARGET
+    }
+
+    private final List<int[]> testSets;
+    private final int[] newMoleculeCounts;
+    private final int startingUnusedCount;
+    private final int unusedCount;
+    private final StopReason stopReason;
+    private final long nanos;
+
+    GenerationResult(List<int[]> testSets, int[] newMoleculeCounts, int startingUnusedCount, int unusedCount, StopReason stopReason, long nanos) {
+        this.testSets = testSets;
+        this.newMoleculeCounts = newMoleculeCounts;
+        this.startingUnusedCount = startingUnusedCount;
+        this.unusedCount = unusedCount;
+        this.stopReason = stopReason;
+        this.nanos = nanos;
+    }
+
+    /**
+     * The test sets generated, in generation order or, if prioritized, highest value first
+     * @return
+     */
+    public List<int[]> getTestSets() { return testSets; }
+
+    /**
+     * The number of molecules each test set covers that none of the ones before it do
+     * @return
+     */
+    public int[] getNewMoleculeCounts() { return newMoleculeCounts.clone(); }
+
+    /**
+     * The number of molecules there were to cover when generation started
+     * @return
+     */
+    public int getStartingUnusedCount() { return startingUnusedCount; }
+
+    /**
+     * The number of molecules still not covered. Molecules given up on because of the Scenario's constraints are neither
+     * covered nor counted here
+     * @return
+     */
+    public int getUnusedCount() { return unusedCount; }
+
+    public StopReason getStopReason() { return stopReason; }
+
+    /**
+     * True if generation stopped before every molecule was covered
+     * @return
+     */
+    public boolean isPartial() { return unusedCount > 0; }
+
+    public long getNanos() { return nanos; }
+
+    /**
+     * The fraction of the molecules covered by all the test sets, from 0 to 1
+     * @return
+     */
+    public double getCoverage() {
+        return newMoleculeCounts.length == 0 ? coverageOf(0) : getCoverage(newMoleculeCounts.length - 1);
+    }
+
+    /**
+     * The fraction of the molecules covered by the test sets up to and including the given one, from 0 to 1
+     * @param row
+     * @return
+     */
+    public double getCoverage(int row) {
+        if (row < 0 || row >= newMoleculeCounts.length) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + newMoleculeCounts.length);
+        }
+        int covered = 0;
+        for (int i = 0; i <= row; i++) {
+            covered += newMoleculeCounts[i];
+        }
+        return coverageOf(covered);
+    }
+
+    private double coverageOf(int covered) {
+        return startingUnusedCount == 0 ? 1 : (double) covered / startingUnusedCount;
+    }
+}
@@ -1,6 +1,8 @@
 package com.rmn.pairwise;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public interface IInventory {
     /**
@@ -10,6 +12,20 @@ public interface IInventory {
      */
     TestDataSet getTestDataSet();
 
+    /**
+     * Returns only the Test Cases needed on top of the ones you already have: the molecules of the existing test sets are marked
+     * as used first, and the rest are covered as usual. See TestDataSet.addExistingTestSets()
+     * @param existingTestSets Maps of parameter set names to values, like the ones TestDataSet.getTestSets() returns
+     * @return
+     */
+    TestDataSet getTestDataSet(List<Map<String, String>> existingTestSets);
+
+    /**
+     * Returns the Test Cases one at a time, generating each one only when it's asked for. See TestDataSet.testSetIterator()
+     * @return
+     */
+    Iterator<int[]> getTestSetIterator();
+
     /**
      * Returns the number of unused pairs still outstanding for the given test set (set of parameter indexes). If your test set is [2, 4, 7] as
      * in the above example, this will look at molecules [2, 4], [2, 7], and [4, 7], and determine which of those molecules has not been used yet.
@@ -19,6 +35,17 @@ public interface IInventory {
      */
     int numberMoleculesCaptured(int[] testSet);
 
+    /**
+     * Returns the number of unused molecules the given value would capture if it were added to a partially-built test set.
+     * Only the positions ordering[0] through ordering[placedCount - 1] of the test set have been filled in so far
+     * @param value The index of the candidate value
+     * @param testSet The test set being built, indexed by parameter set
+     * @param ordering The order in which the parameter sets of the test set are being filled in
+     * @param placedCount The number of parameter sets filled in so far
+     * @return
+     */
+    int numberMoleculesCaptured(int value, int[] testSet, int[] ordering, int placedCount);
+
     /**
      * Pick "best" unused molecule -- the pair with the highest number of unused values
      * @return
@@ -31,6 +58,13 @@ public interface IInventory {
      */
     void updateAllCounts(int[] bestTestSet);
 
+    /**
+     * Marks a molecule as one that can't be part of any legal test set, so it's no longer counted as unused. Molecules the
+     * Scenario's constraints rule out directly are marked by buildMolecules(); this is for the ones found to be impossible later
+     * @param molecule The atoms of the molecule, in ascending order
+     */
+    void markIllegal(int[] molecule);
+
     /**
      * Process the "used" sets to determine which sets have not been used yet
      */
@@ -41,6 +75,21 @@ public interface IInventory {
      */
     void buildMolecules();
 
+    /**
+     * Returns true if the molecule made up of the two atoms (indexes into the flattened parameter values array) has not been
+     * used by any test set yet. The atoms can be given in either order
+     * @param firstAtom
+     * @param secondAtom
+     * @return
+     */
+    boolean isUnusedMolecule(int firstAtom, int secondAtom);
+
+    /**
+     * Returns a [values x values] matrix with a 1 in every cell that represents an unused molecule
+     * @deprecated The matrix is built fresh (and quadratic in the number of values) on each call. Use isUnusedMolecule()
+     * @return
+     */
+    @Deprecated
     int[][] getUnusedMoleculesSearch();
 
     List<Molecule> getUnusedMolecules();
@@ -61,9 +110,18 @@ public interface IInventory {
      */
     long getFullCombinationCount();
 
+    /**
+     * Roughly how much heap the structures that track coverage take up right now: the molecules, which of them are unused,
+     * the unused counts and the queue of unused molecules. Zero until the molecules are built
+     * @return
+     */
+    long getCoverageBytes();
+
     public abstract void setScenario(Scenario scenario);
 
     Scenario getScenario();
 
     void setAtomsPerMolecule(int atoms);
+
+    int getAtomsPerMolecule();
 }
\ No newline at end of file
@@ -5,7 +5,11 @@ import java.util.Arrays;
 /**
  * Represents a single "molecule" of data. Not a test set, not a parameter set, but the smallest "piece" of the scenario you want to test. It 
  * is analagous to a "pair" in the pairwise terminology, but I didn't want to be limited to 2 "atoms". Also note that a molecule doesn't
- * represents the values themselves--it represents the indices of the one-dimensional array the Scenario uses to keep track of ALL atoms
+ * represents the values themselves--it represents the indices of the one-dimensional array the Scenario uses to keep track of ALL atoms.
+ *
+ * The inventories don't keep a Molecule per molecule (that would be most of their heap for a big Scenario); they track molecules
+ * by ordinal in primitive arrays, and the Molecules they hand out are made when they're asked for. Changing one doesn't
+ * change the inventory
  * @author mmerrell
  */
 public class Molecule {
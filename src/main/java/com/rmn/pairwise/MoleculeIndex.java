@@ -0,0 +1,367 @@
+package com.rmn.pairwise;
+
+/**
+ * Assigns every molecule of a Scenario a dense "ordinal", so that molecules can be tracked in primitive arrays instead of
+ * searched for in a list. Ordinals follow the same order buildMolecules() produces them in: combinations of parameter sets
+ * in order ([0, 1], [0, 2], ... [1, 2], ...), then the values of the first set, then the values of the second set, and so
+ * on. Every combination of parameter sets gets a "block" of ordinals, and within a block the values are counted like the
+ * digits of a number whose radixes are the sizes of the parameter sets (a mixed-radix number).
+ *
+ * Using the example from PairwiseInventory:
+ *  Param1: a, b, c
+ *  Param2: i, j, k, l
+ *  Param3: x, y
+ *
+ *  blocks:   [0, 1] start at 0, [0, 2] at 12, [1, 2] at 18
+ *  ordinal of [b, k] (atoms [1, 5]) is 0 + (1 - 0) * 4 + (5 - 3) = 6
+ *
+ * Nothing here is stored per molecule, so an order-3 or order-4 index over millions of molecules is only as big as the
+ * number of combinations of parameter sets (and for pairs, only as big as the number of parameter sets)
+ */
+public class MoleculeIndex {
+    private final int atomsPerMolecule;
+    private final int parameterSetCount;
+    private final int[] parameterPositions;
+    private final int[] valueOffsets;     // index of the first value of each parameter set, plus the total number of values
+    private final int[] valueCounts;      // number of values in each parameter set
+    private final int moleculeCount;
+
+    /**
+     * Pairs only: the ordinal of the first molecule whose first atom comes from each parameter set
+     */
+    private final int[] rowOffsets;
+
+    /**
+     * Order 3 and up: rankOffsets[k][c] is how many combinations of parameter sets come before the first one whose k-th set
+     * is c (when the sets before k are 0..k-1), and blockOffsets[rank] is the ordinal of the first molecule of each combination
+     */
+    private final long[][] rankOffsets;
+    private final int[] blockOffsets;
+
+    /**
+     * Creates an index of the pairs in the Scenario
+     * @param scenario
+     */
+    public MoleculeIndex(Scenario scenario) {
+        this(scenario, 2);
+    }
+
+    /**
+     * Creates an index of the molecules with the given number of atoms in the Scenario
+     * @param scenario
+     * @param atomsPerMolecule The number of atoms per molecule, from 2 up to the number of parameter sets
+     */
+    public MoleculeIndex(Scenario scenario, int atomsPerMolecule) {
+        int[][] legalValues = scenario.getLegalValues();
+        this.parameterSetCount = legalValues.length;
+        if (atomsPerMolecule < 2 || atomsPerMolecule > Math.max(parameterSetCount, 2)) {
+            throw new IllegalArgumentException(String.format("Can't build molecules of %d atoms from %d parameter sets", atomsPerMolecule, parameterSetCount));
+        }
+        this.atomsPerMolecule = atomsPerMolecule;
+        this.parameterPositions = scenario.getParameterPositions();
+
+        this.valueOffsets = scenario.getValueOffsets();
+        this.valueCounts = new int[parameterSetCount];
+        for (int i = 0; i < parameterSetCount; i++) {
+            valueCounts[i] = valueOffsets[i + 1] - valueOffsets[i];
+        }
+
+        long count = 0;
+        if (atomsPerMolecule == 2) {
+            this.rankOffsets = null;
+            this.blockOffsets = null;
+            this.rowOffsets = new int[parameterSetCount + 1];
+            for (int i = 0; i < parameterSetCount; i++) {
+                rowOffsets[i] = (int) count;
+                count += (long) valueCounts[i] * (valueOffsets[parameterSetCount] - valueOffsets[i + 1]);
+                checkMoleculeCount(count);
+            }
+            rowOffsets[parameterSetCount] = (int) count;
+        } else {
+            this.rowOffsets = null;
+            this.rankOffsets = buildRankOffsets(parameterSetCount, atomsPerMolecule);
+            long combinationCount = binomial(parameterSetCount, atomsPerMolecule);
+            checkMoleculeCount(combinationCount);
+
+            this.blockOffsets = new int[ (int) combinationCount + 1 ];
+            int[] sets = new int[atomsPerMolecule];
+            for (int k = 0; k < atomsPerMolecule; k++) {
+                sets[k] = k;
+            }
+            for (int rank = 0; rank < combinationCount; rank++) {
+                blockOffsets[rank] = (int) count;
+                long blockSize = 1;
+                for (int set: sets) {
+                    blockSize *= valueCounts[set];
+                }
+                count += blockSize;
+                checkMoleculeCount(count);
+                nextCombination(sets, parameterSetCount);
+            }
+            blockOffsets[(int) combinationCount] = (int) count;
+        }
+        this.moleculeCount = (int) count;
+    }
+
+    public int getAtomsPerMolecule() { return atomsPerMolecule; }
+
+    /**
+     * The total number of molecules (and therefore the number of ordinals) in the Scenario
+     * @return
+     */
+    public int getMoleculeCount() { return moleculeCount; }
+
+    /**
+     * Returns true if the two atoms come from different parameter sets, and so make up a molecule at all
+     * @param firstAtom
+     * @param secondAtom
+     * @return
+     */
+    public boolean isMolecule(int firstAtom, int secondAtom) {
+        return parameterPositions[firstAtom] != parameterPositions[secondAtom];
+    }
+
+    /**
+     * Returns the ordinal of the molecule made up of the two given atoms (indexes into the flattened parameter values array).
+     * The atoms may be given in either order, but must come from different parameter sets. Only works for an index of pairs
+     * @param firstAtom
+     * @param secondAtom
+     * @return The ordinal of the molecule, between 0 and getMoleculeCount() - 1
+     */
+    public int ordinalOf(int firstAtom, int secondAtom) {
+        if (firstAtom > secondAtom) {
+            int temp = firstAtom;
+            firstAtom = secondAtom;
+            secondAtom = temp;
+        }
+        int firstSet = parameterPositions[firstAtom];
+        int secondSet = parameterPositions[secondAtom];
+        return firstOrdinalOf(firstSet, secondSet)
+                + (firstAtom - valueOffsets[firstSet]) * valueCounts[secondSet]
+                + (secondAtom - valueOffsets[secondSet]);
+    }
+
+    /**
+     * Returns the ordinal of the first pair in the block for the two parameter sets. The block holds |first| x |second|
+     * ordinals, so the blocks can be worked out (and filled in) independently of each other. Only works for an index of pairs
+     * @param firstSet
+     * @param secondSet A parameter set after firstSet
+     * @return
+     */
+    public int firstOrdinalOf(int firstSet, int secondSet) {
+        return rowOffsets[firstSet] + valueCounts[firstSet] * (valueOffsets[secondSet] - valueOffsets[firstSet + 1]);
+    }
+
+    /**
+     * Returns the ordinal of the molecule made up of the given atoms
+     * @param atoms One atom per parameter set, in ascending order
+     * @return The ordinal of the molecule, between 0 and getMoleculeCount() - 1
+     */
+    public int ordinalOf(int[] atoms) {
+        if (atomsPerMolecule == 2) {
+            return ordinalOf(atoms[0], atoms[1]);
+        }
+        long rank = 0;
+        int within = 0;
+        int previousSet = -1;
+        for (int k = 0; k < atomsPerMolecule; k++) {
+            int set = parameterPositions[ atoms[k] ];
+            rank += rankOffsets[k][set] - rankOffsets[k][previousSet + 1];
+            within = within * valueCounts[set] + (atoms[k] - valueOffsets[set]);
+            previousSet = set;
+        }
+        return blockOffsets[(int) rank] + within;
+    }
+
+    /**
+     * Fills in the atoms of the molecule with the given ordinal, in ascending order
+     * @param ordinal
+     * @param atoms An array with room for getAtomsPerMolecule() atoms
+     */
+    public void atomsOf(int ordinal, int[] atoms) {
+        if (atomsPerMolecule == 2) {
+            int firstSet = lastAtOrBelow(rowOffsets, parameterSetCount, ordinal);
+            int local = ordinal - rowOffsets[firstSet];
+            int secondSet = parameterPositions[ valueOffsets[firstSet + 1] + local / valueCounts[firstSet] ];
+            int within = local - valueCounts[firstSet] * (valueOffsets[secondSet] - valueOffsets[firstSet + 1]);
+            atoms[0] = valueOffsets[firstSet] + within / valueCounts[secondSet];
+            atoms[1] = valueOffsets[secondSet] + within % valueCounts[secondSet];
+            return;
+        }
+
+        int rank = lastAtOrBelow(blockOffsets, blockOffsets.length - 1, ordinal);
+        int within = ordinal - blockOffsets[rank];
+
+        //Un-rank the combination of parameter sets, one set at a time, into the atoms array
+        long remaining = rank;
+        int previousSet = -1;
+        for (int k = 0; k < atomsPerMolecule; k++) {
+            long[] offsets = rankOffsets[k];
+            long base = offsets[previousSet + 1];
+            int low = previousSet + 1;
+            int high = parameterSetCount - atomsPerMolecule + k;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (offsets[middle] - base <= remaining) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            remaining -= offsets[low] - base;
+            atoms[k] = low;
+            previousSet = low;
+        }
+
+        //...then swap each set for its value, reading the mixed-radix digits from the least significant end
+        for (int k = atomsPerMolecule - 1; k >= 0; k--) {
+            int set = atoms[k];
+            atoms[k] = valueOffsets[set] + within % valueCounts[set];
+            within /= valueCounts[set];
+        }
+    }
+
+    /**
+     * Returns the atoms of the molecule with the given ordinal, in ascending order
+     * @param ordinal
+     * @return
+     */
+    public int[] getAtoms(int ordinal) {
+        int[] atoms = new int[atomsPerMolecule];
+        atomsOf(ordinal, atoms);
+        return atoms;
+    }
+
+    /**
+     * Receives each molecule from forEachMolecule()
+     */
+    public interface Visitor {
+        /**
+         * @param ordinal
+         * @param atoms The atoms of the molecule, in ascending order. The same array is reused for the next molecule
+         */
+        void visit(int ordinal, int[] atoms);
+    }
+
+    /**
+     * Walks every molecule in ordinal order, block by block (one block per combination of parameter sets), counting off the
+     * atoms of each molecule like an odometer so nothing has to be decoded from its ordinal
+     * @param visitor
+     */
+    public void forEachMolecule(Visitor visitor) {
+        forEachMolecule(0, moleculeCount, visitor);
+    }
+
+    /**
+     * Walks the molecules from one ordinal up to (but not including) another, the same way. Only the first molecule's atoms
+     * are decoded, so ranges that don't overlap can be walked on different threads at little extra cost
+     * @param fromOrdinal
+     * @param toOrdinal
+     * @param visitor
+     */
+    public void forEachMolecule(int fromOrdinal, int toOrdinal, Visitor visitor) {
+        if (fromOrdinal >= toOrdinal) {
+            return;
+        }
+        int[] sets = new int[atomsPerMolecule];
+        int[] digits = new int[atomsPerMolecule];
+        int[] atoms = new int[atomsPerMolecule];
+        atomsOf(fromOrdinal, atoms);
+        for (int k = 0; k < atomsPerMolecule; k++) {
+            sets[k] = parameterPositions[ atoms[k] ];
+            digits[k] = atoms[k] - valueOffsets[ sets[k] ];
+        }
+        for (int ordinal = fromOrdinal; ordinal < toOrdinal; ordinal++) {
+            for (int k = 0; k < atomsPerMolecule; k++) {
+                atoms[k] = valueOffsets[ sets[k] ] + digits[k];
+            }
+            visitor.visit(ordinal, atoms);
+            int k = atomsPerMolecule - 1;
+            while (k >= 0 && ++digits[k] == valueCounts[ sets[k] ]) {
+                digits[k--] = 0;
+            }
+            if (k < 0) {
+                //The end of the block: on to the next combination of parameter sets, skipping any with an empty set
+                boolean more = nextCombination(sets, parameterSetCount);
+                while (more && isEmptyBlock(sets)) {
+                    more = nextCombination(sets, parameterSetCount);
+                }
+            }
+        }
+    }
+
+    private boolean isEmptyBlock(int[] sets) {
+        for (int set: sets) {
+            if (valueCounts[set] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances the combination to the next one in lexicographic order
+     * @param combination
+     * @param n The number of items being chosen from
+     * @return false if this was the last combination
+     */
+    static boolean nextCombination(int[] combination, int n) {
+        int k = combination.length;
+        int i = k - 1;
+        while (i >= 0 && combination[i] == n - k + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        combination[i]++;
+        for (int j = i + 1; j < k; j++) {
+            combination[j] = combination[j - 1] + 1;
+        }
+        return true;
+    }
+
+    static long binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    private static long[][] buildRankOffsets(int n, int k) {
+        long[][] offsets = new long[k][n + 1];
+        for (int position = 0; position < k; position++) {
+            for (int set = 0; set < n; set++) {
+                offsets[position][set + 1] = offsets[position][set] + binomial(n - 1 - set, k - 1 - position);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns the last index (below limit) whose offset is at or below the given value
+     */
+    private static int lastAtOrBelow(int[] offsets, int limit, int value) {
+        int low = 0;
+        int high = limit - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets[middle] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void checkMoleculeCount(long count) {
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("The scenario has more than %d molecules of %d atoms", Integer.MAX_VALUE, atomsPerMolecule));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.rmn.pairwise;
+
+import java.util.Arrays;
+
+/**
+ * Finds the unused molecule with the highest weight without looking at every molecule. Molecules (by ordinal) are kept in
+ * buckets by weight, and each bucket is a min-heap of ordinals so that ties go to the lowest ordinal.
+ *
+ * Weights are allowed to drop at any time without telling the queue: a molecule's bucket is only an upper bound on its
+ * weight, and it gets moved down into the right bucket the next time it reaches the front. Since weights never go back up,
+ * the first molecule found whose weight matches its bucket is the best one. Used molecules are dropped the same way
+ */
+public class MoleculeQueue {
+
+    /**
+     * Supplies the current weight of a molecule
+     */
+    public interface Weigher {
+        /**
+         * @param ordinal
+         * @return The current weight of the molecule (zero or more), or a negative number if it has been used
+         */
+        int weightOf(int ordinal);
+    }
+
+    private final Weigher weigher;
+    private final int moleculeCount;
+    private OrdinalHeap[] buckets = new OrdinalHeap[0];
+    private int topBucket = -1;
+
+    /**
+     * Creates a queue holding every molecule from 0 to moleculeCount - 1, at its current weight
+     * @param moleculeCount
+     * @param weigher
+     */
+    public MoleculeQueue(int moleculeCount, Weigher weigher) {
+        this.weigher = weigher;
+        this.moleculeCount = moleculeCount;
+        reset();
+    }
+
+    /**
+     * Empties the queue and adds every molecule back at its current weight, reusing the space the queue already has
+     */
+    public void reset() {
+        for (OrdinalHeap bucket: buckets) {
+            bucket.clear();
+        }
+        topBucket = -1;
+        for (int ordinal = 0; ordinal < moleculeCount; ordinal++) {
+            add(ordinal);
+        }
+    }
+
+    /**
+     * Adds a molecule at its current weight. This is also how to tell the queue that a molecule's weight has gone up
+     * @param ordinal
+     */
+    public void add(int ordinal) {
+        int weight = weigher.weightOf(ordinal);
+        if (weight < 0) {
+            return;
+        }
+        if (weight >= buckets.length) {
+            int oldLength = buckets.length;
+            buckets = Arrays.copyOf(buckets, Math.max(weight + 1, oldLength * 2));
+            for (int i = oldLength; i < buckets.length; i++) {
+                buckets[i] = new OrdinalHeap();
+            }
+        }
+        buckets[weight].add(ordinal);
+        topBucket = Math.max(topBucket, weight);
+    }
+
+    /**
+     * Returns the ordinal of the unused molecule with the highest weight, picking the lowest ordinal when there's a tie. The
+     * molecule stays in the queue
+     * @return The ordinal, or -1 if there are no unused molecules left
+     */
+    public int peekBest() {
+        while (topBucket >= 0) {
+            OrdinalHeap bucket = buckets[topBucket];
+            if (bucket.isEmpty()) {
+                topBucket--;
+                continue;
+            }
+            int ordinal = bucket.peek();
+            int weight = weigher.weightOf(ordinal);
+            if (weight == topBucket) {
+                return ordinal;
+            }
+            bucket.poll();
+            if (weight >= 0) {
+                add(ordinal);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Roughly how much heap the buckets take up right now. Buckets only ever grow, so this is also the most they've taken up
+     * @return
+     */
+    public long getSizeInBytes() {
+        long size = 8L * buckets.length;
+        for (OrdinalHeap bucket: buckets) {
+            size += 4L * bucket.heap.length;
+        }
+        return size;
+    }
+
+    /**
+     * A growable binary min-heap of ints
+     */
+    private static class OrdinalHeap {
+        private int[] heap = new int[8];
+        private int size = 0;
+
+        boolean isEmpty() { return size == 0; }
+
+        int peek() { return heap[0]; }
+
+        void clear() { size = 0; }
+
+        void add(int ordinal) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (heap[parent] <= ordinal) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                child = parent;
+            }
+            heap[child] = ordinal;
+        }
+
+        int poll() {
+            int result = heap[0];
+            int last = heap[--size];
+            int parent = 0;
+            int half = size >>> 1;
+            while (parent < half) {
+                int child = 2 * parent + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[parent] = heap[child];
+                parent = child;
+            }
+            heap[parent] = last;
+            return result;
+        }
+    }
+}
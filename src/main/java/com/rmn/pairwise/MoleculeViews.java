@@ -0,0 +1,87 @@
+package com.rmn.pairwise;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * List views of molecules that only exist as ordinals, for inventories that don't keep a Molecule object per molecule. The
+ * Molecule objects are created as they're asked for
+ */
+final class MoleculeViews {
+    private MoleculeViews() { }
+
+    /**
+     * Returns a view of every molecule in the index, in ordinal order. A Molecule is marked illegal if the constraints rule it
+     * out or its bit in illegal is set
+     */
+    static List<Molecule> all(final MoleculeIndex moleculeIndex, final Exclusions exclusions, final BitSet illegal) {
+        return new AbstractList<Molecule>() {
+            @Override
+            public Molecule get(int index) {
+                Molecule molecule = new Molecule(moleculeIndex.getAtoms(index));
+                molecule.setIllegal(illegal.get(index) || (!exclusions.isEmpty() && exclusions.excludesAny(molecule.getAtoms())));
+                return molecule;
+            }
+
+            @Override
+            public int size() {
+                return moleculeIndex.getMoleculeCount();
+            }
+        };
+    }
+
+    /**
+     * Returns a view of the molecules that have not been used yet. The size is always current, and iterating is cheap, but
+     * get() has to count its way through the unused molecules
+     */
+    static List<Molecule> unused(final MoleculeIndex moleculeIndex, final CoverageMatrix coverageMatrix) {
+        return new AbstractList<Molecule>() {
+            @Override
+            public Molecule get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                int ordinal = coverageMatrix.nextUnused(0);
+                for (int i = 0; i < index; i++) {
+                    ordinal = coverageMatrix.nextUnused(ordinal + 1);
+                }
+                return new Molecule(moleculeIndex.getAtoms(ordinal));
+            }
+
+            @Override
+            public int size() {
+                return coverageMatrix.getUnusedCount();
+            }
+
+            @Override
+            public Iterator<Molecule> iterator() {
+                return new Iterator<Molecule>() {
+                    private int next = coverageMatrix.nextUnused(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public Molecule next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        Molecule molecule = new Molecule(moleculeIndex.getAtoms(next));
+                        next = coverageMatrix.nextUnused(next + 1);
+                        return molecule;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
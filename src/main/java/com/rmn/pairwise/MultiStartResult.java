@@ -0,0 +1,45 @@
+package com.rmn.pairwise;
+
+import java.util.List;
+
+/**
+ * The smallest suite found by PairwiseGenerator.generateSmallest(), along with the seed that produced it (so it can be
+ * generated again with generate(seed, candidatePoolSize)) and the size of the suite every seed produced
+ */
+public class MultiStartResult {
+    private final List<int[]> testSets;
+    private final long seed;
+    private final long[] seeds;
+    private final int[] suiteSizes;
+
+    MultiStartResult(List<int[]> testSets, long seed, long[] seeds, int[] suiteSizes) {
+        this.testSets = testSets;
+        this.seed = seed;
+        this.seeds = seeds;
+        this.suiteSizes = suiteSizes;
+    }
+
+    /**
+     * The smallest suite, as raw test sets
+     * @return
+     */
+    public List<int[]> getTestSets() { return testSets; }
+
+    /**
+     * The seed that produced the smallest suite. When several seeds tie, it's the first of them
+     * @return
+     */
+    public long getSeed() { return seed; }
+
+    /**
+     * Every seed that was tried, in order
+     * @return
+     */
+    public long[] getSeeds() { return seeds.clone(); }
+
+    /**
+     * The number of test sets each seed produced, in the same order as getSeeds()
+     * @return
+     */
+    public int[] getSuiteSizes() { return suiteSizes.clone(); }
+}
@@ -0,0 +1,417 @@
+package com.rmn.pairwise;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inventory of order-N molecules: every combination of values from N different parameter sets (every triple, for
+ * order-3) has to show up in at least one test set. Set the order with setAtomsPerMolecule() before calling buildMolecules().
+ *
+ * There are far too many order-3 and order-4 molecules to keep a Molecule object for each one, so molecules only exist as
+ * ordinals handed out by a MoleculeIndex. The only per-molecule state is one bit in a CoverageMatrix, and the Molecule
+ * objects returned from getAllMolecules() and getUnusedMolecules() are created on demand.
+ *
+ * Unlike PairwiseInventory, the unused counts here only go down when a molecule is actually used for the first time, so
+ * they're always the number of unused molecules each value is part of
+ */
+public class OrderNInventory implements IInventory {
+    private Logger log = LoggerFactory.getLogger( this.getClass() );
+
+    public OrderNInventory() { }
+
+    public OrderNInventory(int atomsPerMolecule) {
+        this.setAtomsPerMolecule(atomsPerMolecule);
+    }
+
+    /**
+     * Creates an inventory that starts from a compiled model's state instead of building its own, and can be put back to it
+     * with reset(). Only its coverage is its own; the Scenario and the molecule index are the model's
+     * @param model
+     */
+    OrderNInventory(CompiledModel model) {
+        this.model = model;
+        this.scenario = model.getScenario();
+        this.atomsPerMolecule = model.getAtomsPerMolecule();
+        this.moleculeIndex = model.getMoleculeIndex();
+        this.coverageMatrix = new CoverageMatrix(model.getStartingCoverage());
+        this.unusedParameterIndexCounts = model.getStartingCounts().clone();
+        this.illegalMolecules = new BitSet();
+        this.moleculeQueue = new MoleculeQueue(moleculeIndex.getMoleculeCount(), moleculeWeigher);
+    }
+
+    /**
+     * The model this inventory was made from, if any. Building the molecules again forgets it
+     */
+    private CompiledModel model = null;
+
+    //********************************************
+    //Parameter Set info and methods
+    private Scenario scenario;
+    public Scenario getScenario() { return scenario; }
+
+    @Override
+    public void setScenario(Scenario scenario) { this.scenario = scenario; }
+
+    private int atomsPerMolecule = 3;
+
+    @Override
+    public int getAtomsPerMolecule() { return atomsPerMolecule; }
+
+    @Override
+    public void setAtomsPerMolecule(int atoms) {
+        if (atoms < 2) {
+            throw new IllegalArgumentException("A molecule needs at least 2 atoms, not " + atoms);
+        }
+        this.atomsPerMolecule = atoms;
+    }
+
+    private int[] unusedParameterIndexCounts;
+    public int[] getUnusedParameterIndexCounts() { return this.unusedParameterIndexCounts; }
+
+    @Override
+    public long getFullCombinationCount() {
+        long count = 1;
+        //Just multiply out all the parameters, X * Y * Z
+        for ( ParameterSet<?> set: scenario.getParameterSets() ) {
+            count *= set.getParameterValues().size();
+        }
+        return count;
+    }
+
+    //********************************************
+    // Molecule info and methods
+    private MoleculeIndex moleculeIndex = null;
+    public MoleculeIndex getMoleculeIndex() { return moleculeIndex; }
+
+    private CoverageMatrix coverageMatrix = null;
+    public CoverageMatrix getCoverageMatrix() { return coverageMatrix; }
+
+    /**
+     * The molecules TestDataSet gave up on, by ordinal. The ones the Scenario's constraints rule out aren't kept here, since
+     * the constraints can say so whenever they're asked
+     */
+    private BitSet illegalMolecules = null;
+
+    private MoleculeQueue moleculeQueue = null;
+
+    /**
+     * The weight of a molecule is the sum of the unused counts of its atoms
+     */
+    private final MoleculeQueue.Weigher moleculeWeigher = new MoleculeQueue.Weigher() {
+        private int[] atoms = new int[0];
+
+        @Override
+        public int weightOf(int ordinal) {
+            if (!coverageMatrix.isUnused(ordinal)) {
+                return -1;
+            }
+            if (atoms.length != atomsPerMolecule) {
+                atoms = new int[atomsPerMolecule];
+            }
+            moleculeIndex.atomsOf(ordinal, atoms);
+            int weight = 0;
+            for (int atom: atoms) {
+                weight += unusedParameterIndexCounts[atom];
+            }
+            return weight;
+        }
+    };
+
+    /**
+     * Scratch arrays for scoring test sets. Candidates can be scored on several threads at once, so each thread gets its own
+     */
+    private final ThreadLocal<int[][]> scoringScratch = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[2][0];
+        }
+    };
+
+    /**
+     * Returns the thread's scratch arrays: [0] for the positions of a combination, [1] for atoms, each sized for a molecule
+     */
+    private int[][] getScoringScratch() {
+        int[][] scratch = scoringScratch.get();
+        if (scratch[1].length != atomsPerMolecule) {
+            scratch[0] = new int[atomsPerMolecule];
+            scratch[1] = new int[atomsPerMolecule];
+        }
+        return scratch;
+    }
+
+    @Override
+    public int initMoleculeCount() {
+        int moleculeCount = new MoleculeIndex(scenario, getEffectiveAtomsPerMolecule()).getMoleculeCount();
+        log.debug("Number of molecules: {}", moleculeCount);
+        return moleculeCount;
+    }
+
+    @Override
+    public int getMoleculeCount() { return moleculeIndex.getMoleculeCount(); }
+
+    @Override
+    public void buildMolecules() {
+        if (getEffectiveAtomsPerMolecule() < atomsPerMolecule) {
+            log.warn("There are only {} parameter sets, so molecules will have {} atoms", scenario.getParameterSetCount(), scenario.getParameterSetCount());
+            this.atomsPerMolecule = getEffectiveAtomsPerMolecule();
+        }
+        this.model = null;
+        this.moleculeIndex = new MoleculeIndex(scenario, atomsPerMolecule);
+        this.coverageMatrix = new CoverageMatrix(moleculeIndex);
+        this.unusedParameterIndexCounts = CompiledModel.markExcluded(scenario, moleculeIndex, coverageMatrix, null);
+        this.illegalMolecules = new BitSet();
+        this.moleculeQueue = new MoleculeQueue(moleculeIndex.getMoleculeCount(), moleculeWeigher);
+        log.debug("Number of molecules: {}", coverageMatrix.getUnusedCount());
+    }
+
+    /**
+     * Puts everything back to the compiled model's starting state, as if no test sets had been generated, without allocating
+     * anything
+     * @throws IllegalStateException If the inventory wasn't made from a CompiledModel
+     */
+    void reset() {
+        if (model == null) {
+            throw new IllegalStateException("Only an inventory made from a compiled model can be reset");
+        }
+        coverageMatrix.copyFrom(model.getStartingCoverage());
+        System.arraycopy(model.getStartingCounts(), 0, unusedParameterIndexCounts, 0, unusedParameterIndexCounts.length);
+        illegalMolecules.clear();
+        moleculeQueue.reset();
+    }
+
+    /**
+     * Counts the unused molecules each value is in all over again, and rebuilds the queue
+     */
+    @Override
+    public void processUnusedValues() {
+        final int[] unusedCounts = new int[scenario.getParameterValuesCount()];
+        moleculeIndex.forEachMolecule(new MoleculeIndex.Visitor() {
+            @Override
+            public void visit(int ordinal, int[] atoms) {
+                if (coverageMatrix.isUnused(ordinal)) {
+                    for (int atom: atoms) {
+                        ++unusedCounts[atom];
+                    }
+                }
+            }
+        });
+
+        this.unusedParameterIndexCounts = unusedCounts;
+        this.moleculeQueue = new MoleculeQueue(moleculeIndex.getMoleculeCount(), moleculeWeigher);
+    }
+
+    @Override
+    public void updateAllCounts(int[] bestTestSet) {
+        int[] positions = firstCombination(atomsPerMolecule);
+        int[] atoms = new int[atomsPerMolecule];
+        do {
+            for (int k = 0; k < atomsPerMolecule; k++) {
+                atoms[k] = bestTestSet[ positions[k] ];
+            }
+            if (coverageMatrix.markUsed(moleculeIndex.ordinalOf(atoms))) {
+                for (int atom: atoms) {
+                    --unusedParameterIndexCounts[atom];
+                }
+            }
+        } while (MoleculeIndex.nextCombination(positions, scenario.getParameterSetCount()));
+    }
+
+    @Override
+    public void markIllegal(int[] molecule) {
+        int ordinal = moleculeIndex.ordinalOf(molecule);
+        illegalMolecules.set(ordinal);
+        if (coverageMatrix.markUsed(ordinal)) {
+            for (int atom: molecule) {
+                --unusedParameterIndexCounts[atom];
+            }
+        }
+        log.debug("Molecule {} is illegal", new Molecule(molecule));
+    }
+
+    @Override
+    public int[] getBestMolecule() {
+        int ordinalOfBestMolecule = moleculeQueue.peekBest();
+        if (ordinalOfBestMolecule < 0) {
+            throw new IndexOutOfBoundsException("There are no unused molecules left");
+        }
+        int[] best = moleculeIndex.getAtoms(ordinalOfBestMolecule);
+        if (log.isDebugEnabled()) {
+            log.debug("Best molecule is {} with weight {}", new Molecule(best), moleculeWeigher.weightOf(ordinalOfBestMolecule));
+        }
+        return best;
+    }
+
+    @Override
+    public int numberMoleculesCaptured(int[] testSet) {
+        int moleculesCapturedCount = 0;
+        int[][] scratch = getScoringScratch();
+        int[] positions = resetCombination(scratch[0], atomsPerMolecule);
+        int[] atoms = scratch[1];
+        do {
+            for (int k = 0; k < atomsPerMolecule; k++) {
+                atoms[k] = testSet[ positions[k] ];
+            }
+            if (coverageMatrix.isUnused(moleculeIndex.ordinalOf(atoms))) {
+                ++moleculesCapturedCount;
+            }
+        } while (MoleculeIndex.nextCombination(positions, testSet.length));
+        return moleculesCapturedCount;
+    }
+
+    @Override
+    public int numberMoleculesCaptured(int value, int[] testSet, int[] ordering, int placedCount) {
+        int partnerCount = atomsPerMolecule - 1;
+        if (placedCount < partnerCount) {
+            return 0;
+        }
+
+        //Every combination of N - 1 of the positions filled in so far makes a molecule with the new value
+        int moleculesCapturedCount = 0;
+        int[][] scratch = getScoringScratch();
+        int[] partners = resetCombination(scratch[0], partnerCount);
+        int[] atoms = scratch[1];
+        do {
+            for (int k = 0; k < partnerCount; k++) {
+                atoms[k] = testSet[ ordering[ partners[k] ] ];
+            }
+            atoms[partnerCount] = value;
+            sortAtoms(atoms);
+            if (coverageMatrix.isUnused(moleculeIndex.ordinalOf(atoms))) {
+                ++moleculesCapturedCount;
+            }
+        } while (nextCombination(partners, partnerCount, placedCount));
+        return moleculesCapturedCount;
+    }
+
+    @Override
+    public boolean isUnusedMolecule(int firstAtom, int secondAtom) {
+        if (atomsPerMolecule != 2) {
+            throw new UnsupportedOperationException("Molecules in this inventory have " + atomsPerMolecule + " atoms, not 2");
+        }
+        return coverageMatrix.isUnused(firstAtom, secondAtom);
+    }
+
+    @Override
+    @Deprecated
+    public int[][] getUnusedMoleculesSearch() {
+        if (atomsPerMolecule != 2) {
+            throw new UnsupportedOperationException("Molecules in this inventory have " + atomsPerMolecule + " atoms, not 2");
+        }
+        int[][] unusedMoleculesSearch = new int[ scenario.getParameterValuesCount() ][ scenario.getParameterValuesCount() ];
+        for (Molecule molecule: getUnusedMolecules()) {
+            unusedMoleculesSearch[ molecule.getAtoms()[0] ][ molecule.getAtoms()[1] ] = 1;
+        }
+        return unusedMoleculesSearch;
+    }
+
+    /**
+     * Returns a view of the molecules that have not been used yet. The size is always current, and iterating is cheap, but
+     * get() has to count its way through the unused molecules
+     * @return
+     */
+    @Override
+    public List<Molecule> getUnusedMolecules() {
+        return MoleculeViews.unused(moleculeIndex, coverageMatrix);
+    }
+
+    /**
+     * Returns a view of every molecule in the inventory, in ordinal order. Each Molecule is made when it's asked for, so changing
+     * one doesn't change the inventory
+     * @return
+     */
+    @Override
+    public List<Molecule> getAllMolecules() {
+        return MoleculeViews.all(moleculeIndex, scenario.getExclusions(), illegalMolecules);
+    }
+
+    @Override
+    public long getCoverageBytes() {
+        if (coverageMatrix == null) {
+            return 0;
+        }
+        return coverageMatrix.getSizeInBytes() + moleculeQueue.getSizeInBytes() + 4L * unusedParameterIndexCounts.length
+                + illegalMolecules.size() / 8;
+    }
+
+    @Override
+    public TestDataSet getTestDataSet() {
+        TestDataSet dataSet = new TestDataSet(this, scenario);
+        dataSet.buildTestCases();
+        dataSet.logFullCombinationCount();
+        return dataSet;
+    }
+
+    @Override
+    public TestDataSet getTestDataSet(List<Map<String, String>> existingTestSets) {
+        TestDataSet dataSet = new TestDataSet(this, scenario);
+        dataSet.addExistingTestSets(existingTestSets);
+        dataSet.buildTestCases();
+        dataSet.logFullCombinationCount();
+        return dataSet;
+    }
+
+    @Override
+    public Iterator<int[]> getTestSetIterator() {
+        return new TestDataSet(this, scenario).testSetIterator();
+    }
+
+    private int getEffectiveAtomsPerMolecule() {
+        return Math.min(atomsPerMolecule, Math.max(scenario.getParameterSetCount(), 2));
+    }
+
+    private static int[] firstCombination(int size) {
+        int[] combination = new int[size];
+        for (int k = 0; k < size; k++) {
+            combination[k] = k;
+        }
+        return combination;
+    }
+
+    /**
+     * Sets the first size entries of the array to the first combination, 0 through size - 1
+     */
+    static int[] resetCombination(int[] combination, int size) {
+        for (int k = 0; k < size; k++) {
+            combination[k] = k;
+        }
+        return combination;
+    }
+
+    /**
+     * Same as MoleculeIndex.nextCombination(), for a combination held in the first size entries of a bigger array
+     */
+    static boolean nextCombination(int[] combination, int size, int n) {
+        int i = size - 1;
+        while (i >= 0 && combination[i] == n - size + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        combination[i]++;
+        for (int j = i + 1; j < size; j++) {
+            combination[j] = combination[j - 1] + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Insertion sort--there are only ever a handful of atoms
+     */
+    static void sortAtoms(int[] atoms) {
+        for (int i = 1; i < atoms.length; i++) {
+            int atom = atoms[i];
+            int j = i - 1;
+            while (j >= 0 && atoms[j] > atom) {
+                atoms[j + 1] = atoms[j];
+                j--;
+            }
+            atoms[j + 1] = atom;
+        }
+    }
+}
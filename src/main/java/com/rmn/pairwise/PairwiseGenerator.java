@@ -0,0 +1,181 @@
+package com.rmn.pairwise;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates test sets from a CompiledModel, and can be called from any number of threads at once. The model is shared; each
+ * call gets an inventory made from it (PairwiseInventory for pairs, OrderNInventory for bigger molecules) out of a small pool,
+ * resets it to the model's starting state, and gives it back when it's done, so a service answering lots of requests for the
+ * same Scenario only pays for compiling it once, and after the first few calls doesn't allocate any per-molecule state at all.
+ *
+ * The test sets are the same ones the matching inventory would generate with the same seed and candidate pool size
+ */
+public class PairwiseGenerator {
+    public static final int DEFAULT_MAX_POOLED = 8;
+
+    private final CompiledModel model;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<IInventory> pool = new ConcurrentLinkedQueue<IInventory>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    public PairwiseGenerator(CompiledModel model) {
+        this(model, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param model
+     * @param maxPooled The most idle inventories kept around for later calls. More calls than this can still run at once;
+     *                  the extra inventories are just thrown away afterwards
+     */
+    public PairwiseGenerator(CompiledModel model, int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("The pool size can't be negative: " + maxPooled);
+        }
+        this.model = model;
+        this.maxPooled = maxPooled;
+    }
+
+    public CompiledModel getModel() { return model; }
+
+    /**
+     * Generates the test sets with TestDataSet's default seed and candidate pool size
+     * @return
+     */
+    public List<int[]> generate() {
+        return generate(TestDataSet.DEFAULT_SEED, TestDataSet.DEFAULT_CANDIDATE_POOL_SIZE);
+    }
+
+    /**
+     * Generates the test sets
+     * @param seed
+     * @param candidatePoolSize
+     * @return Raw test sets: one value index per parameter set, in parameter set order
+     */
+    public List<int[]> generate(long seed, int candidatePoolSize) {
+        IInventory inventory = acquire();
+        try {
+            TestDataSet dataSet = new TestDataSet(inventory, model.getScenario());
+            dataSet.setSeed(seed);
+            dataSet.setCandidatePoolSize(candidatePoolSize);
+            dataSet.buildTestCases();
+            return new ArrayList<int[]>(dataSet.getRawTestSets());
+        } finally {
+            release(inventory);
+        }
+    }
+
+    /**
+     * Runs one generation per seed, seeds TestDataSet.DEFAULT_SEED through DEFAULT_SEED + starts - 1, on a thread per core,
+     * and returns the smallest suite. Which seed gives the smallest suite varies from Scenario to Scenario, and the spread can
+     * easily be 10% or more, so when the suite costs far more to run than to generate this is worth paying for once
+     * @param starts The number of seeds to try
+     * @param candidatePoolSize
+     * @return
+     */
+    public MultiStartResult generateSmallest(int starts, int candidatePoolSize) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("At least one start is needed, not " + starts);
+        }
+        long[] seeds = new long[starts];
+        for (int i = 0; i < starts; i++) {
+            seeds[i] = TestDataSet.DEFAULT_SEED + i;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(starts, Runtime.getRuntime().availableProcessors()));
+        try {
+            return generateSmallest(seeds, candidatePoolSize, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs one generation per seed on the given executor, and returns the smallest suite. Every run shares this generator's
+     * model, so only the coverage is per run. The executor belongs to the caller, and is never shut down here
+     * @param seeds
+     * @param candidatePoolSize
+     * @param executor
+     * @return
+     */
+    public MultiStartResult generateSmallest(long[] seeds, final int candidatePoolSize, ExecutorService executor) {
+        if (seeds.length == 0) {
+            throw new IllegalArgumentException("At least one seed is needed");
+        }
+        List<Future<List<int[]>>> futures = new ArrayList<Future<List<int[]>>>(seeds.length);
+        for (final long seed: seeds) {
+            futures.add(executor.submit(new Callable<List<int[]>>() {
+                @Override
+                public List<int[]> call() {
+                    return generate(seed, candidatePoolSize);
+                }
+            }));
+        }
+
+        int[] suiteSizes = new int[seeds.length];
+        int best = 0;
+        List<int[]> bestTestSets = null;
+        for (int i = 0; i < seeds.length; i++) {
+            List<int[]> testSets = Futures.waitFor(futures.get(i), "generating test sets");
+            suiteSizes[i] = testSets.size();
+            if (bestTestSets == null || testSets.size() < bestTestSets.size()) {
+                best = i;
+                bestTestSets = testSets;
+            }
+        }
+        return new MultiStartResult(bestTestSets, seeds[best], seeds.clone(), suiteSizes);
+    }
+
+    /**
+     * Turns a raw test set into a map of parameter set names to values, like TestDataSet.getTestSet()
+     * @param testSet
+     * @return
+     */
+    public Map<String, String> getTestSet(int[] testSet) {
+        Scenario scenario = model.getScenario();
+        Map<String, String> singleTestSet = new LinkedHashMap<String, String>();
+        for (int j = 0; j < scenario.getParameterSetCount(); j++) {
+            singleTestSet.put(scenario.getParameterSet(j).getName(), String.valueOf(scenario.getParameterValues().get(testSet[j])));
+        }
+        return singleTestSet;
+    }
+
+    /**
+     * The number of idle inventories in the pool right now
+     * @return
+     */
+    int getPooledCount() { return pooledCount.get(); }
+
+
+    private IInventory acquire() {
+        IInventory inventory = pool.poll();
+        if (inventory == null) {
+            if (model.getAtomsPerMolecule() == 2) {
+                return new PairwiseInventory(model);
+            }
+            return new OrderNInventory(model);
+        }
+        pooledCount.decrementAndGet();
+        if (inventory instanceof PairwiseInventory) {
+            ((PairwiseInventory) inventory).reset();
+        } else {
+            ((OrderNInventory) inventory).reset();
+        }
+        return inventory;
+    }
+
+    private void release(IInventory inventory) {
+        if (pooledCount.incrementAndGet() <= maxPooled) {
+            pool.offer(inventory);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+}
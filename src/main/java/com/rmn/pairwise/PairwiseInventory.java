@@ -3,9 +3,12 @@ package com.rmn.pairwise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Terms:
@@ -33,6 +36,30 @@ import java.util.List;
 public class PairwiseInventory implements IInventory {
     private Logger log = LoggerFactory.getLogger( this.getClass() );
 
+    public PairwiseInventory() { }
+
+    /**
+     * Creates an inventory that starts from a compiled model's state instead of building its own, and can be put back to it
+     * with reset(). Only its coverage is its own; the Scenario and the molecule index are the model's
+     * @param model A model of pairs
+     */
+    PairwiseInventory(CompiledModel model) {
+        if (model.getAtomsPerMolecule() != 2) {
+            throw new IllegalArgumentException("The compiled model has " + model.getAtomsPerMolecule() + " atoms per molecule, not 2");
+        }
+        this.model = model;
+        this.scenario = model.getScenario();
+        this.moleculeIndex = model.getMoleculeIndex();
+        this.coverageMatrix = new CoverageMatrix(model.getStartingCoverage());
+        this.unusedParameterIndexCounts = model.getStartingCounts().clone();
+        createViews();
+    }
+
+    /**
+     * The model this inventory was made from, if any. Building the molecules again forgets it
+     */
+    private CompiledModel model = null;
+
     //********************************************
     //Parameter Set info and methods
     private Scenario scenario;
@@ -56,13 +83,37 @@ public class PairwiseInventory implements IInventory {
 
     //********************************************
     // Molecule info and methods
+    /**
+     * Hands out the ordinal of each molecule. Nothing is stored per molecule but its bit in the coverage matrix; the Molecule
+     * objects handed out by getAllMolecules() and getUnusedMolecules() are made from the ordinals as they're asked for
+     */
+    private MoleculeIndex moleculeIndex = null;
+    public MoleculeIndex getMoleculeIndex() { return moleculeIndex; }
+
+    /**
+     * One bit per molecule, set while the molecule is unused. This is the only record of which molecules are unused
+     */
+    private CoverageMatrix coverageMatrix = null;
+    public CoverageMatrix getCoverageMatrix() { return coverageMatrix; }
+
+    /**
+     * The molecules TestDataSet gave up on, by ordinal. The ones the Scenario's constraints rule out aren't kept here, since
+     * the constraints can say so whenever they're asked
+     */
+    private BitSet illegalMolecules = null;
+
     private List<Molecule> allMolecules = null;
-    
+
+    /**
+     * Returns a view of every molecule, in ordinal order. Each Molecule is made when it's asked for, so changing one doesn't
+     * change the inventory
+     * @return
+     */
     @Override
     public List<Molecule> getAllMolecules() { return allMolecules; }
 
     @Override
-    public int getMoleculeCount() { return allMolecules.size(); }
+    public int getMoleculeCount() { return moleculeIndex.getMoleculeCount(); }
     
     @Override
     public int initMoleculeCount() {
@@ -76,69 +127,116 @@ public class PairwiseInventory implements IInventory {
         return moleculeCount;
     }
 
+    private List<Molecule> unusedMolecules = null;
+
     /**
-     * The molecules that have not been used yet. As they are used, they get removed from this list
+     * Returns a view of the molecules that have not been used yet, straight from the coverage matrix. The size is always
+     * current, and iterating is cheap, but get() has to count its way through the unused molecules
+     * @return
      */
-    private List<Molecule> unusedMolecules = null;
-    
     @Override
     public List<Molecule> getUnusedMolecules() { return unusedMolecules; }
 
-    private int[][] unusedMoleculesSearch = null;
-    
+    /**
+     * The weight of a molecule is the sum of the unused counts of its atoms. Weights below zero are treated as zero, so that
+     * when nothing scores higher the first unused molecule is picked
+     */
+    private final MoleculeQueue.Weigher moleculeWeigher = new MoleculeQueue.Weigher() {
+        private final int[] atoms = new int[2];
+
+        @Override
+        public int weightOf(int ordinal) {
+            if (!coverageMatrix.isUnused(ordinal)) {
+                return -1;
+            }
+            moleculeIndex.atomsOf(ordinal, atoms);
+            return Math.max(unusedParameterIndexCounts[ atoms[0] ] + unusedParameterIndexCounts[ atoms[1] ], 0);
+        }
+    };
+
+    /**
+     * The unused molecules, ordered by weight. The counts only ever go down, so updateAllCounts() doesn't need to touch it
+     */
+    private MoleculeQueue moleculeQueue = null;
+
     @Override
-    public int[][] getUnusedMoleculesSearch() { return unusedMoleculesSearch; };
-    
-    public void buildMolecules(int atomsPerMolecule) {
-        List<Molecule> allMolecules = new ArrayList<Molecule>();
-        List<Molecule> unusedMolecules = new ArrayList<Molecule>();          // List of pairs which have not yet been captured
-        
+    public boolean isUnusedMolecule(int firstAtom, int secondAtom) {
+        return coverageMatrix.isUnused(firstAtom, secondAtom);
+    }
+
+    @Override
+    @Deprecated
+    public int[][] getUnusedMoleculesSearch() {
         int[][] unusedMoleculesSearch = new int[ scenario.getParameterValuesCount() ][ scenario.getParameterValuesCount() ];
-        for (int parameterSet = 0; parameterSet < scenario.getLegalValues().length - 1; parameterSet++) {
-            for (int nextParameterValue = parameterSet + 1; nextParameterValue < scenario.getLegalValues().length; nextParameterValue++) {
-                int[] firstRow = scenario.getLegalValues()[parameterSet];
-                int[] secondRow = scenario.getLegalValues()[nextParameterValue];
-
-                for (int aFirstRow : firstRow) {
-                    for (int aSecondRow : secondRow) {
-                        int[] atoms = new int[]{aFirstRow, aSecondRow};
-                        Molecule molecule = new Molecule(atomsPerMolecule);
-                        molecule.setAtoms(atoms);
-
-                        unusedMolecules.add(molecule);
-                        unusedMoleculesSearch[aFirstRow][aSecondRow] = 1;
-                        allMolecules.add(molecule);
-                        logUnusedMolecules(unusedMolecules);
-                    } // y
-                } // x
-                
-            } // j
-        } // i
+        for (Molecule molecule: unusedMolecules) {
+            unusedMoleculesSearch[ molecule.getAtoms()[0] ][ molecule.getAtoms()[1] ] = 1;
+        }
+        return unusedMoleculesSearch;
+    }
+
+    private ExecutorService executor = null;
+    public ExecutorService getExecutor() { return executor; }
 
-        scenario.updateParameterPositions();
-        this.allMolecules = allMolecules;
-        this.unusedMolecules = unusedMolecules;
-        this.unusedMoleculesSearch = unusedMoleculesSearch;
-        this.processUnusedValues();
+    /**
+     * Marks the molecules the constraints rule out on the given executor instead of on the calling thread. The executor belongs
+     * to the caller, and is never shut down here
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+    public void buildMolecules(int atomsPerMolecule) {
+        this.model = null;
+        this.moleculeIndex = new MoleculeIndex(scenario);
+        this.coverageMatrix = new CoverageMatrix(moleculeIndex);
+        this.unusedParameterIndexCounts = CompiledModel.markExcluded(scenario, moleculeIndex, coverageMatrix, executor);
+        createViews();
         this.logAllMolecules(this.getAllMolecules());
         this.logUnusedMolecules(this.getUnusedMolecules());
     }
-    
+
+    private void createViews() {
+        this.illegalMolecules = new BitSet();
+        this.allMolecules = MoleculeViews.all(moleculeIndex, scenario.getExclusions(), illegalMolecules);
+        this.unusedMolecules = MoleculeViews.unused(moleculeIndex, coverageMatrix);
+        this.moleculeQueue = new MoleculeQueue(moleculeIndex.getMoleculeCount(), moleculeWeigher);
+    }
+
+    /**
+     * Puts everything back to the compiled model's starting state, as if no test sets had been generated, without allocating
+     * anything
+     * @throws IllegalStateException If the inventory wasn't made from a CompiledModel
+     */
+    void reset() {
+        if (model == null) {
+            throw new IllegalStateException("Only an inventory made from a compiled model can be reset");
+        }
+        coverageMatrix.copyFrom(model.getStartingCoverage());
+        System.arraycopy(model.getStartingCounts(), 0, unusedParameterIndexCounts, 0, unusedParameterIndexCounts.length);
+        illegalMolecules.clear();
+        moleculeQueue.reset();
+    }
+
     @Override
     public void buildMolecules() {
         this.buildMolecules(2);
     }
 
+    /**
+     * Counts the unused molecules each value is in all over again, from the coverage matrix, and rebuilds the queue
+     */
     @Override
     public void processUnusedValues() {
         int[] unusedCounts = new int[scenario.getParameterValuesCount()];  // indexes are parameter values, cell values are counts of how many times the parameter value apperas in the analyzer.getUnusedPairs() collection
-        for (Molecule molecule: this.getAllMolecules()) {
-            ++unusedCounts[ molecule.getAtoms()[0] ];
-            ++unusedCounts[ molecule.getAtoms()[1] ];
+        int[] atoms = new int[2];
+        for (int ordinal = coverageMatrix.nextUnused(0); ordinal >= 0; ordinal = coverageMatrix.nextUnused(ordinal + 1)) {
+            moleculeIndex.atomsOf(ordinal, atoms);
+            ++unusedCounts[ atoms[0] ];
+            ++unusedCounts[ atoms[1] ];
         }
         
         this.logUnusedMolecules(unusedMolecules);
         this.unusedParameterIndexCounts = unusedCounts;
+        this.moleculeQueue = new MoleculeQueue(moleculeIndex.getMoleculeCount(), moleculeWeigher);
     }
     
     @Override
@@ -152,47 +250,36 @@ public class PairwiseInventory implements IInventory {
                 --unusedParameterIndexCounts[v1];
                 --unusedParameterIndexCounts[v2];
    
-                log.debug("Setting getUnusedMoleculesSearch() at [{}][{}] to 0", v1, v2);
-                this.getUnusedMoleculesSearch()[v1][v2] = 0;
-   
-                //Set up a new list of unused molecules, then assign it back to the unusedMolecules field--otherwise we get a ConcurrentModificationException
-                List<Molecule> tempUnusedMolecules = new ArrayList<Molecule>();
-                tempUnusedMolecules.addAll(this.getUnusedMolecules());
-                
-                for (Molecule molecule: this.getUnusedMolecules()) {
-                    int[] curr = molecule.getAtoms();
-   
-                    //TODO this is a huge performance sink--we should build a map or lookup table and remove the molecules that way
-                    if (curr[0] == v1 && curr[1] == v2) {
-                        log.debug("Removing pair [{}, {}] from the Unused Molecule list", v1, v2);
-                        tempUnusedMolecules.remove( molecule );
-                    }
+                if (coverageMatrix.markUsed(moleculeIndex.ordinalOf(v1, v2))) {
+                    log.debug("Marking molecule [{}][{}] as used", v1, v2);
                 }
-                this.unusedMolecules = tempUnusedMolecules;
             } // j
         } // i
     }
     
+    @Override
+    public void markIllegal(int[] molecule) {
+        int ordinal = moleculeIndex.ordinalOf(molecule[0], molecule[1]);
+        illegalMolecules.set(ordinal);
+        if (coverageMatrix.markUsed(ordinal)) {
+            --unusedParameterIndexCounts[ molecule[0] ];
+            --unusedParameterIndexCounts[ molecule[1] ];
+        }
+        log.debug("Molecule [{}, {}] is illegal", molecule[0], molecule[1]);
+    }
+
     @Override
     public int[] getBestMolecule() {
-        //Weight the pair by looping through the unused set
-        int bestWeight = 0;
-        int indexOfBestMolecule = 0;
-        for (int unusedMoleculeIndex = 0; unusedMoleculeIndex < this.getUnusedMolecules().size(); unusedMoleculeIndex++) {
-            int[] curr = this.getUnusedMolecules().get( unusedMoleculeIndex ).getAtoms();
-            int weight = this.getUnusedParameterIndexCounts()[ curr[0] ] + this.getUnusedParameterIndexCounts()[ curr[1] ];
-            log.debug(String.format("Pair %d: [%s,%s], Weight: %2d", unusedMoleculeIndex, scenario.getParameterValues().get(curr[0]), scenario.getParameterValues().get (curr[1]), weight));
-            
-            //If the new pair is weighted more highly than the previous, make it the new "best"
-            if (weight > bestWeight) {
-                bestWeight = weight;
-                indexOfBestMolecule = unusedMoleculeIndex;
-            }
+        int ordinalOfBestMolecule = moleculeQueue.peekBest();
+        if (ordinalOfBestMolecule < 0) {
+            throw new IndexOutOfBoundsException("There are no unused molecules left");
         }
-         
+
         //log and return the best pair
-        int[] best = this.getUnusedMolecules().get(indexOfBestMolecule).getAtoms();
-        log.debug(String.format("Best pair is [%s, %s] at %d with weight %d", scenario.getParameterValues().get(best[0]), scenario.getParameterValues().get(best[1]), indexOfBestMolecule, bestWeight));
+        int[] best = moleculeIndex.getAtoms(ordinalOfBestMolecule);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Best pair is [%s, %s] at %d with weight %d", scenario.getParameterValues().get(best[0]), scenario.getParameterValues().get(best[1]), ordinalOfBestMolecule, moleculeWeigher.weightOf(ordinalOfBestMolecule)));
+        }
         return best;
     }
 
@@ -201,7 +288,7 @@ public class PairwiseInventory implements IInventory {
         int moleculesCapturedCount = 0;
         for (int i = 0; i <= testSet.length - 2; ++i) {
             for (int j = i + 1; j <= testSet.length - 1; ++j) {
-                if (unusedMoleculesSearch[ testSet[i] ][ testSet[j] ] == 1) {
+                if (coverageMatrix.isUnused(testSet[i], testSet[j])) {
                     ++moleculesCapturedCount;
                 }
             }
@@ -209,6 +296,26 @@ public class PairwiseInventory implements IInventory {
         return moleculesCapturedCount;
     }
 
+    @Override
+    public int numberMoleculesCaptured(int value, int[] testSet, int[] ordering, int placedCount) {
+        int moleculesCapturedCount = 0;
+        for (int p = 0; p < placedCount; ++p) {
+            if (coverageMatrix.isUnused(value, testSet[ ordering[p] ])) {
+                ++moleculesCapturedCount;
+            }
+        }
+        return moleculesCapturedCount;
+    }
+
+    @Override
+    public long getCoverageBytes() {
+        if (coverageMatrix == null) {
+            return 0;
+        }
+        return coverageMatrix.getSizeInBytes() + moleculeQueue.getSizeInBytes() + 4L * unusedParameterIndexCounts.length
+                + illegalMolecules.size() / 8;
+    }
+
     @Override
     public TestDataSet getTestDataSet() {
         TestDataSet dataSet = new TestDataSet(this, scenario);
@@ -217,7 +324,24 @@ public class PairwiseInventory implements IInventory {
         return dataSet;
     }
 
+    @Override
+    public TestDataSet getTestDataSet(List<Map<String, String>> existingTestSets) {
+        TestDataSet dataSet = new TestDataSet(this, scenario);
+        dataSet.addExistingTestSets(existingTestSets);
+        dataSet.buildTestCases();
+        dataSet.logFullCombinationCount();
+        return dataSet;
+    }
+
+    @Override
+    public Iterator<int[]> getTestSetIterator() {
+        return new TestDataSet(this, scenario).testSetIterator();
+    }
+
    protected void logAllMolecules(List<Molecule> allMolecules) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
         log.debug("All Molecules:");
         int moleculeCount = 0;
         for (Molecule molecule: allMolecules) {
@@ -227,21 +351,27 @@ public class PairwiseInventory implements IInventory {
     }
     
     protected void logUnusedMolecules(List<Molecule> unusedMolecules) {
-        String unusedPairsStr = "Unused Molecules: ";
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder unusedPairsStr = new StringBuilder("Unused Molecules: ");
         int moleculeCount = 0;
         for (Molecule molecule: unusedMolecules) {
             if (null != molecule) {
                 int[] curr = molecule.getAtoms();
-                unusedPairsStr += molecule + ",";
+                unusedPairsStr.append(molecule).append(",");
                 log.debug(String.format("%3d: %2d,  %2d", moleculeCount, curr[0], curr[1]));
             }
             moleculeCount++;
         }
-        unusedPairsStr = unusedPairsStr.substring( 0, unusedPairsStr.length() - 1 );
-        log.debug(unusedPairsStr);
+        unusedPairsStr.setLength(unusedPairsStr.length() - 1);
+        log.debug(unusedPairsStr.toString());
     }
 
     public void setAtomsPerMolecule (int atoms) {
-        log.warn("This feature not available in a strictly pairwise environment--atoms will be set to 2");
+        if (atoms != 2) log.warn("This feature not available in a strictly pairwise environment (use OrderNInventory instead)--atoms will be set to 2");
     }
+
+    @Override
+    public int getAtomsPerMolecule() { return 2; }
 }
\ No newline at end of file
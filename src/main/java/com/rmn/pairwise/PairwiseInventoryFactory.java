@@ -8,7 +8,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.List;
 
 public class PairwiseInventoryFactory {
@@ -16,16 +20,57 @@ public class PairwiseInventoryFactory {
 
     /**
      * Go through the parameter sets to populate the list of ParameterSets we're going to use. These are the raw materials
-     *  from which the test cases will be generated
+     *  from which the test cases will be generated. Lines containing "=>" are constraints (see processConstraintLine())
      * @param contents The contents of the Scenario you're testing
-     * @return The Scenario, fully populated
+     * @return The Scenario, fully populated and frozen
      */
     public static Scenario generateScenario(String contents) {
-        Scenario scenario = new Scenario();
-        for (String line: StringUtils.split(contents, System.getProperty("line.separator"))) {
-            scenario.addParameterSet(processOneLine(line));
+        try {
+            return generateScenario(new StringReader(contents));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read from a String", e);
+        }
+    }
+
+    /**
+     * Reads the Scenario a line at a time, in a single pass. Lines can end in "\n", "\r" or "\r\n", and blank lines are
+     * skipped. The parameter sets are collected as they're read and added to the Scenario all at once at the end, so loading
+     * takes time in proportion to the size of the input
+     * @param reader The contents of the Scenario you're testing. It's read to the end, but not closed
+     * @return The Scenario, fully populated and frozen
+     * @throws IOException
+     */
+    public static Scenario generateScenario(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<ParameterSet<?>> parameterSets = new ArrayList<ParameterSet<?>>();
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (StringUtils.isBlank(line)) {
+                continue;
+            }
+            if (line.contains(Constraint.IMPLIES)) {
+                constraints.add(processConstraintLine(line));
+            } else {
+                parameterSets.add(processOneLine(line));
+            }
         }
-        return scenario;
+
+        Scenario.Builder builder = new Scenario.Builder().addParameterSets(parameterSets);
+        for (Constraint constraint: constraints) {
+            builder.addConstraint(constraint);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the Scenario from a channel holding UTF-8 text. See generateScenario(Reader)
+     * @param channel
+     * @return The Scenario, fully populated
+     * @throws IOException
+     */
+    public static Scenario generateScenario(ReadableByteChannel channel) throws IOException {
+        return generateScenario(Channels.newReader(channel, "UTF-8"));
     }
 
     /**
@@ -41,16 +86,51 @@ public class PairwiseInventoryFactory {
         return inventory;
     }
 
+    /**
+     * Parses a String representing the contents of the Scenario, and returns an inventory of molecules with the given number of
+     * atoms (2 for pairs, 3 for triples, etc)
+     * @param contents The contents of the Scenario you're testing
+     * @param atomsPerMolecule The number of atoms per molecule
+     * @return the inventory
+     */
+    public static IInventory generateParameterInventory(String contents, int atomsPerMolecule) {
+        IInventory inventory = atomsPerMolecule == 2 ? new PairwiseInventory() : new OrderNInventory();
+        inventory.setAtomsPerMolecule(atomsPerMolecule);
+        Scenario scenario = generateScenario(contents);
+        inventory.setScenario(scenario);
+        inventory.buildMolecules();
+        return inventory;
+    }
+
+    /**
+     * Parses a String representing the contents of the Scenario, and returns a pairwise inventory whose test sets come from the
+     * cache when the same Scenario has been generated before
+     * @param contents The contents of the Scenario you're testing
+     * @param cache
+     * @return the inventory
+     */
+    public static IInventory generateParameterInventory(String contents, GenerationCache cache) {
+        return generateParameterInventory(contents, 2, cache);
+    }
+
+    /**
+     * Parses a String representing the contents of the Scenario, and returns an inventory whose test sets come from the cache
+     * when the same Scenario has been generated before. The molecules are only built on a cache miss
+     * @param contents The contents of the Scenario you're testing
+     * @param atomsPerMolecule The number of atoms per molecule
+     * @param cache
+     * @return the inventory
+     */
+    public static IInventory generateParameterInventory(String contents, int atomsPerMolecule, GenerationCache cache) {
+        IInventory inventory = atomsPerMolecule == 2 ? new PairwiseInventory() : new OrderNInventory();
+        inventory.setAtomsPerMolecule(atomsPerMolecule);
+        inventory.setScenario(generateScenario(contents));
+        return new CachingInventory(inventory, cache);
+    }
+
     public static IInventory generateParameterInventory(InputStream stream) throws IOException {
-        InputStreamReader isr = new InputStreamReader(stream);
-        BufferedReader br = new BufferedReader(isr);
-   
-        Scenario scenario = new Scenario();
-        String line;
-        while ((line = br.readLine()) != null) {
-            scenario.addParameterSet(processOneLine(line));
-        }
-        
+        Scenario scenario = generateScenario(new InputStreamReader(stream));
+
         IInventory inventory = new PairwiseInventory();
         inventory.setScenario(scenario);
         inventory.buildMolecules();
@@ -64,19 +144,69 @@ public class PairwiseInventoryFactory {
      */
     public static ParameterSet<String> processOneLine(String line) {
         log.debug("Processing line: {}", line);
-        String[] lineTokens = line.split(":", 2);
-        List<String> strValues = splitAndTrim(",", lineTokens[1]);
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("A parameter set needs a \":\" between its name and its values: " + line);
+        }
+        List<String> strValues = splitAndTrim(line.substring(colon + 1));
         ParameterSet<String> parameterSet = new ParameterSet<String>(strValues);
-        parameterSet.setName(lineTokens[0]);
+        parameterSet.setName(line.substring(0, colon));
         return parameterSet;
     }
 
-    private static List<String> splitAndTrim(String regex, String lineTokens) {
-        String[] rawTokens = lineTokens.split(regex);
-        String[] processedTokens = new String[ rawTokens.length ];
-        for (int i = 0; i< rawTokens.length; i++) {
-            processedTokens[i] = StringUtils.trim(rawTokens[i]);
+    /**
+     * Processes a single constraint, such as "Browser = Safari => OS != Windows". Each side names a parameter set, then "=" or
+     * "!=", then one or more comma-separated values
+     * @param line One line, containing one constraint
+     * @return The Constraint representing the line
+     */
+    public static Constraint processConstraintLine(String line) {
+        log.debug("Processing constraint: {}", line);
+        String[] sides = line.split(Constraint.IMPLIES, 2);
+        if (sides.length != 2) {
+            throw new IllegalArgumentException("A constraint needs an \"" + Constraint.IMPLIES + "\": " + line);
+        }
+        String[] ifClause = splitClause(sides[0], line);
+        String[] thenClause = splitClause(sides[1], line);
+        return new Constraint(ifClause[0], ifClause[1] != null, splitAndTrim(ifClause[2]),
+                thenClause[0], thenClause[1] != null, splitAndTrim(thenClause[2]));
+    }
+
+    /**
+     * Splits one side of a constraint into the parameter set name, the "!=" (or null for "="), and the values
+     */
+    private static String[] splitClause(String clause, String line) {
+        String operator = clause.contains("!=") ? "!=" : "=";
+        String[] tokens = clause.split(operator, 2);
+        if (tokens.length != 2 || StringUtils.isBlank(tokens[0]) || StringUtils.isBlank(tokens[1])) {
+            throw new IllegalArgumentException("Each side of a constraint needs a parameter, \"=\" or \"!=\", and values: " + line);
+        }
+        return new String[] { StringUtils.trim(tokens[0]), "!=".equals(operator) ? operator : null, tokens[1] };
+    }
+
+    /**
+     * Splits on commas and trims each value. Like String.split(","), empty values at the end are dropped
+     */
+    private static List<String> splitAndTrim(String values) {
+        List<String> tokens = new ArrayList<String>();
+        int start = 0;
+        int comma;
+        while ((comma = values.indexOf(',', start)) >= 0) {
+            tokens.add(values.substring(start, comma));
+            start = comma + 1;
+        }
+        tokens.add(values.substring(start));
+
+        int end = tokens.size();
+        if (end > 1) {
+            while (end > 0 && tokens.get(end - 1).isEmpty()) {
+                end--;
+            }
+        }
+        List<String> processedTokens = new ArrayList<String>(end);
+        for (int i = 0; i < end; i++) {
+            processedTokens.add(StringUtils.trim(tokens.get(i)));
         }
-        return Arrays.asList(processedTokens);
+        return processedTokens;
     }
 }
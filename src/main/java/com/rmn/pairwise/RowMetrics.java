@@ -0,0 +1,70 @@
+package com.rmn.pairwise;
+
+/**
+ * What generating one test set cost, as reported to GenerationListener.testSetAdded(). Times are in nanoseconds, and include
+ * any attempts that ran into a constraint before the test set was found
+ */
+public class RowMetrics {
+    int row;
+    long nanos;
+    long bestMoleculeNanos;
+    long singleTestSetNanos;
+    long updateAllCountsNanos;
+    int unusedMoleculeCount;
+    long coverageBytes;
+
+    /**
+     * The number of the test set in the order it was generated, counting from zero. Test sets added with
+     * TestDataSet.addExistingTestSets() aren't counted. If TestDataSet.setPrioritizing() is on, getRawTestSets() ends up in
+     * another order, so these numbers don't match positions in it
+     * @return
+     */
+    public int getRow() { return row; }
+
+    /**
+     * The time it took to generate the test set, all told
+     * @return
+     */
+    public long getNanos() { return nanos; }
+
+    /**
+     * The time spent asking the inventory for the best molecule
+     * @return
+     */
+    public long getBestMoleculeNanos() { return bestMoleculeNanos; }
+
+    /**
+     * The time spent building and scoring candidate test sets. With an executor, this is the sum over all the threads, so it
+     * can be more than getNanos()
+     * @return
+     */
+    public long getSingleTestSetNanos() { return singleTestSetNanos; }
+
+    /**
+     * The time spent marking the molecules of the test set as used
+     * @return
+     */
+    public long getUpdateAllCountsNanos() { return updateAllCountsNanos; }
+
+    /**
+     * The number of molecules still left to cover after this test set
+     * @return
+     */
+    public int getUnusedMoleculeCount() { return unusedMoleculeCount; }
+
+    /**
+     * See IInventory.getCoverageBytes()
+     * @return
+     */
+    public long getCoverageBytes() { return coverageBytes; }
+
+    void reset(int row) {
+        this.row = row;
+        this.nanos = 0;
+        this.bestMoleculeNanos = 0;
+        this.singleTestSetNanos = 0;
+        this.updateAllCountsNanos = 0;
+        this.unusedMoleculeCount = 0;
+        this.coverageBytes = 0;
+    }
+}
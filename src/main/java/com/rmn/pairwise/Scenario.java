@@ -6,9 +6,91 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
+/**
+ * The parameter sets (and constraints) under test, along with the flattened arrays the inventories work from.
+ *
+ * A Scenario can be built up one parameter set at a time, but every addition rebuilds the arrays. To build one in one go, use a
+ * Scenario.Builder, which works the arrays out exactly once and hands back a frozen Scenario. Once frozen, nothing about a
+ * Scenario changes any more, so it can be shared between threads and inventories. The arrays it hands out are its own, and must
+ * not be modified
+ */
 public class Scenario {
     private Logger log = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * Collects parameter sets and constraints, then builds a frozen Scenario from them
+     */
+    public static class Builder {
+        private final List<ParameterSet<?>> parameterSets = new ArrayList<ParameterSet<?>>();
+        private final List<Constraint> constraints = new ArrayList<Constraint>();
+
+        public Builder addParameterSet(ParameterSet<?> parameterSet) {
+            parameterSets.add(parameterSet);
+            return this;
+        }
+
+        public <T> Builder addParameterSet(String name, List<T> values) {
+            ParameterSet<T> parameterSet = new ParameterSet<T>(values);
+            parameterSet.setName(name);
+            return addParameterSet(parameterSet);
+        }
+
+        public Builder addParameterSets(Collection<? extends ParameterSet<?>> parameterSets) {
+            this.parameterSets.addAll(parameterSets);
+            return this;
+        }
+
+        public Builder addConstraint(Constraint constraint) {
+            constraints.add(constraint);
+            return this;
+        }
+
+        /**
+         * Returns a new, frozen Scenario. The builder can keep being used afterwards
+         * @return
+         * @throws IllegalArgumentException If a constraint refers to a parameter set or value that isn't in the Scenario
+         */
+        public Scenario build() {
+            Scenario scenario = new Scenario();
+            scenario.addParameterSets(parameterSets);
+            for (Constraint constraint: constraints) {
+                scenario.addConstraint(constraint);
+            }
+            return scenario.freeze();
+        }
+    }
+
+    private volatile boolean frozen = false;
+    public boolean isFrozen() { return frozen; }
+
+    /**
+     * Stops the Scenario from changing: the constraints are compiled, the lists become read-only, and adding parameter sets or
+     * constraints throws an IllegalStateException from here on
+     * @return this Scenario
+     * @throws IllegalArgumentException If a constraint refers to a parameter set or value that isn't in the Scenario
+     */
+    public Scenario freeze() {
+        if (frozen) {
+            return this;
+        }
+        if (legalValues == null) {
+            legalValues = new int[0][];
+            updateParameterPositions();
+        }
+        getExclusions();
+        parameterSets = Collections.unmodifiableList(parameterSets);
+        parameterValues = Collections.unmodifiableList(parameterValues);
+        constraints = Collections.unmodifiableList(constraints);
+        frozen = true;
+        return this;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The scenario is frozen, so it can't be changed");
+        }
+    }
+
     private List<ParameterSet<?>> parameterSets = new ArrayList<ParameterSet<?>>();
     public List<ParameterSet<?>> getParameterSets() { return parameterSets; }
     public ParameterSet<?> getParameterSet(int index) {
@@ -25,6 +107,7 @@ public class Scenario {
     public int[][] getLegalValues() { return legalValues; }
     
     public void addParameterSet(ParameterSet<?> parameterSet) {
+        checkNotFrozen();
         parameterSets.add(parameterSet);
         int[] parameterValueIndexes = new int[ parameterSet.getParameterValues().size() ];
 
@@ -32,6 +115,69 @@ public class Scenario {
         updateLegalValues(parameterSet, parameterValueIndexes);
         updateParameterValues(parameterSet);
         updateParameterPositions();
+        exclusions = null;
+    }
+
+    /**
+     * Adds several parameter sets at once. The metadata arrays are only rebuilt once, at the end, instead of once per parameter
+     * set, which makes this the way to load scenarios with thousands of parameter sets
+     * @param parameterSets
+     */
+    public void addParameterSets(Collection<? extends ParameterSet<?>> parameterSets) {
+        checkNotFrozen();
+        int oldSetCount = legalValues == null ? 0 : legalValues.length;
+        int[][] newLegalValues = new int[ oldSetCount + parameterSets.size() ][];
+        if (oldSetCount > 0) {
+            System.arraycopy(legalValues, 0, newLegalValues, 0, oldSetCount);
+        }
+
+        int set = oldSetCount;
+        int valueIndex = getParameterValuesCount();
+        for (ParameterSet<?> parameterSet: parameterSets) {
+            int[] parameterValueIndexes = new int[ parameterSet.getParameterValues().size() ];
+            for (int i = 0; i < parameterValueIndexes.length; i++) {
+                parameterValueIndexes[i] = valueIndex++;
+            }
+            newLegalValues[set++] = parameterValueIndexes;
+            this.parameterSets.add(parameterSet);
+            updateParameterValues(parameterSet);
+        }
+
+        legalValues = newLegalValues;
+        updateParameterPositions();
+        exclusions = null;
+    }
+
+    private List<Constraint> constraints = new ArrayList<Constraint>();
+    public List<Constraint> getConstraints() { return constraints; }
+
+    /**
+     * Adds a rule about values that can't be tested together. The parameter sets it mentions don't have to be added yet
+     * @param constraint
+     */
+    public void addConstraint(Constraint constraint) {
+        checkNotFrozen();
+        constraints.add(constraint);
+        exclusions = null;
+    }
+
+    private Exclusions exclusions = null;
+
+    /**
+     * Returns the constraints compiled down to the pairs of values they exclude. They're compiled the first time this is called
+     * after a parameter set or constraint was added
+     * @return
+     * @throws IllegalArgumentException If a constraint refers to a parameter set or value that isn't in the Scenario
+     */
+    public Exclusions getExclusions() {
+        if (exclusions == null) {
+            Exclusions compiled = new Exclusions(getParameterValuesCount());
+            for (Constraint constraint: constraints) {
+                constraint.addExclusions(this, compiled);
+            }
+            exclusions = compiled;
+        }
+        return exclusions;
     }
     
     /**
@@ -75,20 +221,39 @@ public class Scenario {
     private int[] parameterPositions = null; // The parameter position for a given value
     public int[] getParameterPositions() { return this.parameterPositions; }
 
+    private int[] valueOffsets = null;
+
     /**
-     * The parameterPositions field (int[]) represents the "parameter position" for each given value. See above for details
+     * The index of the first value of each parameter set in the flattened parameter values array, followed by the total number
+     * of values (so the values of parameter set i run from valueOffsets[i] up to, but not including, valueOffsets[i + 1])
+     * @return
+     */
+    public int[] getValueOffsets() { return this.valueOffsets; }
+
+    /**
+     * The parameterPositions field (int[]) represents the "parameter position" for each given value. See above for details.
+     * The value offsets are worked out at the same time. A frozen Scenario's are already final, so this does nothing
      */
     public void updateParameterPositions() {
+        if (frozen) {
+            return;
+        }
         int[] parameterPositions = new int[ this.getParameterValuesCount() ]; // the indexes tell us which parameter set the value belongs to
+        int[] valueOffsets = new int[ this.getLegalValues().length + 1 ];
 
         int k = 0; //The index of the parameter set attached to this value
         for ( int i = 0; i < this.getLegalValues().length; ++i ) {
             int[] curr = this.getLegalValues()[i];
+            valueOffsets[i] = k;
             for (int aCurr : curr) {
                 parameterPositions[k++] = i;
             }
         }
-        log.debug("Parameter Positions: {}", Arrays.toString(parameterPositions));
+        valueOffsets[ this.getLegalValues().length ] = k;
+        this.valueOffsets = valueOffsets;
+        if (log.isDebugEnabled()) {
+            log.debug("Parameter Positions: {}", Arrays.toString(parameterPositions));
+        }
         this.parameterPositions = parameterPositions;  
     }
 
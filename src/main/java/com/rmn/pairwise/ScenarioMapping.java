@@ -0,0 +1,95 @@
+package com.rmn.pairwise;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How the value indexes of an earlier version of a Scenario line up with the current one, so that test sets generated for the
+ * earlier version can be carried over (see TestDataSet.addPreviousTestSets()). Parameter sets are matched by name, and values
+ * within them by equals(), so adding, removing or reordering values or parameter sets all come out right
+ */
+public class ScenarioMapping {
+    private final Scenario previous;
+    private final Scenario current;
+
+    /**
+     * The current index of every previous value, or -1 if the value (or its parameter set) is gone
+     */
+    private final int[] currentValues;
+
+    /**
+     * The previous position of every current parameter set, or -1 if it's new
+     */
+    private final int[] previousPositions;
+
+    public ScenarioMapping(Scenario previous, Scenario current) {
+        this.previous = previous;
+        this.current = current;
+
+        Map<String, Integer> previousPositionsByName = new HashMap<String, Integer>();
+        for (int position = 0; position < previous.getParameterSetCount(); position++) {
+            previousPositionsByName.put(previous.getParameterSet(position).getName(), position);
+        }
+
+        this.currentValues = new int[ previous.getParameterValuesCount() ];
+        Arrays.fill(currentValues, -1);
+        this.previousPositions = new int[ current.getParameterSetCount() ];
+        for (int position = 0; position < current.getParameterSetCount(); position++) {
+            Integer previousPosition = previousPositionsByName.get(current.getParameterSet(position).getName());
+            previousPositions[position] = previousPosition == null ? -1 : previousPosition;
+            if (previousPosition == null) {
+                continue;
+            }
+            int[] previousLegalValues = previous.getLegalValues()[previousPosition];
+            int[] currentLegalValues = current.getLegalValues()[position];
+            for (int previousValue: previousLegalValues) {
+                Object value = previous.getParameterValues().get(previousValue);
+                for (int currentValue: currentLegalValues) {
+                    if (value == null ? current.getParameterValues().get(currentValue) == null : value.equals(current.getParameterValues().get(currentValue))) {
+                        currentValues[previousValue] = currentValue;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public Scenario getPrevious() { return previous; }
+    public Scenario getCurrent() { return current; }
+
+    /**
+     * Returns the current index of a previous value
+     * @param previousValue
+     * @return The index, or -1 if the value was removed
+     */
+    public int getCurrentValue(int previousValue) { return currentValues[previousValue]; }
+
+    /**
+     * Returns where a current parameter set was in the previous Scenario
+     * @param position
+     * @return The position, or -1 if the parameter set is new
+     */
+    public int getPreviousPosition(int position) { return previousPositions[position]; }
+
+    /**
+     * Translates a previous test set to the current Scenario. Parameter sets that are new come out as -1, since there's nothing
+     * to carry over for them. Parameter sets that were removed are simply left out
+     * @param previousTestSet
+     * @return The test set, or null if one of its values was removed from a parameter set that's still there
+     */
+    public int[] map(int[] previousTestSet) {
+        int[] testSet = new int[ previousPositions.length ];
+        for (int position = 0; position < previousPositions.length; position++) {
+            if (previousPositions[position] < 0) {
+                testSet[position] = -1;
+                continue;
+            }
+            testSet[position] = currentValues[ previousTestSet[ previousPositions[position] ] ];
+            if (testSet[position] < 0) {
+                return null;
+            }
+        }
+        return testSet;
+    }
+}
@@ -3,112 +3,812 @@ package com.rmn.pairwise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class TestDataSet {
     private Logger log = LoggerFactory.getLogger(this.getClass());
 
     private Scenario scenario;
     private IInventory inventory;
+
+    /**
+     * The inventory again, if it can score values against a mask of the values placed so far; otherwise null
+     */
+    private ValueMaskScorer valueMaskScorer;
     private List<int[]> testSets = new ArrayList<int[]>();
     public List<int[]> getRawTestSets() { return testSets; }
+
+    private List<int[]> existingTestSets = new ArrayList<int[]>();
+
+    /**
+     * The test sets that were passed to addExistingTestSets(), as raw test sets. They aren't part of getRawTestSets()
+     * @return
+     */
+    public List<int[]> getExistingRawTestSets() { return existingTestSets; }
     
-    private Random r = new Random(2);
+    public static final long DEFAULT_SEED = 2;
+    public static final int DEFAULT_CANDIDATE_POOL_SIZE = 1;
+
+    private long seed = DEFAULT_SEED;
+    public long getSeed() { return seed; }
+
+    private Random r = new Random(seed);
+
+    /**
+     * How many times the candidate pool is rebuilt when none of its candidates can be completed without breaking a constraint,
+     * before falling back to a search of every test set the best molecule could be in (see findLegalTestSet())
+     */
+    private static final int MAX_CONSTRAINED_ATTEMPTS = 10;
+
+    /**
+     * Reseeds the random number generator used to order the parameter sets and pick between candidates. The same seed (and
+     * candidate pool size) always produces the same test sets
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.r = new Random(seed);
+    }
+
+    private int candidatePoolSize = DEFAULT_CANDIDATE_POOL_SIZE;
+    public int getCandidatePoolSize() { return candidatePoolSize; }
+
+    /**
+     * The number of candidate test sets to generate for each test set added. Each candidate fills in the parameter sets in a
+     * different random order, and the one that captures the most unused molecules wins
+     * @param candidatePoolSize
+     */
+    public void setCandidatePoolSize(int candidatePoolSize) {
+        if (candidatePoolSize < 1) {
+            throw new IllegalArgumentException("The candidate pool needs at least one candidate, not " + candidatePoolSize);
+        }
+        this.candidatePoolSize = candidatePoolSize;
+    }
+
+    private boolean prioritizing = false;
+    public boolean isPrioritizing() { return prioritizing; }
+
+    /**
+     * Has buildTestCases(GenerationBudget) put the test sets it generates in priority order (see TestSetPrioritizer) instead of
+     * leaving them in the order they were generated in. Ordering them takes a second coverage matrix for the whole Scenario,
+     * as big as the inventory's own, for as long as the ordering takes
+     * @param prioritizing
+     */
+    public void setPrioritizing(boolean prioritizing) { this.prioritizing = prioritizing; }
+
+    private ExecutorService executor = null;
+    public ExecutorService getExecutor() { return executor; }
+
+    /**
+     * Generates the candidates on the given executor (a ForkJoinPool, or any other ExecutorService) instead of one after the
+     * other. The executor belongs to the caller, and is never shut down here
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) { this.executor = executor; }
+
+    /**
+     * Scratch space for building one candidate test set, so that nothing has to be allocated while it's being built. Each
+     * candidate in the pool gets its own, which also keeps them apart when they're built on different threads
+     */
+    static class Workspace {
+        final int[] testSet;
+        final int[] ordering;
+        final long[] placedValues;
+        int[] moleculePositions = new int[0];
+
+        Workspace(Scenario scenario) {
+            this.testSet = new int[ scenario.getParameterSetCount() ];
+            this.ordering = new int[ scenario.getParameterSetCount() ];
+            this.placedValues = scenario.getExclusions().newValueMask();
+        }
+    }
+
+    private final List<GenerationListener> listeners = new ArrayList<GenerationListener>();
+
+    /**
+     * Tells the listener about each test set as it's generated. Nothing is timed unless there's at least one listener
+     * @param listener
+     */
+    public void addListener(GenerationListener listener) { listeners.add(listener); }
+
+    public void removeListener(GenerationListener listener) { listeners.remove(listener); }
+
+    //What listeners get told about: reused for every row, and only filled in when there are listeners
+    private final RowMetrics rowMetrics = new RowMetrics();
+    private long[] candidateNanos = new long[0];
+    private int rowsGenerated = 0;
+    private long generationStart = -1;
+
+    //Reused from one test set to the next, and resized when the candidate pool size changes
+    private Workspace[] workspaces = new Workspace[0];
+    private Random[] candidateRandoms = new Random[0];
+    private int[][] candidateSets = new int[0][];
+    private int[] moleculesCaptured = new int[0];
 
     public TestDataSet(IInventory inventory, Scenario scenario) {
         this.inventory = inventory;
+        this.valueMaskScorer = inventory instanceof ValueMaskScorer ? (ValueMaskScorer) inventory : null;
         this.scenario = scenario;
     }
     
+    /**
+     * Marks every molecule of test sets you already have (a hand-maintained regression suite, say) as used, so that
+     * buildTestCases() only generates the test sets needed to cover what they miss. Call this before buildTestCases()
+     * @param testSets Maps of parameter set names to values, like the ones getTestSets() returns
+     * @throws IllegalArgumentException If a test set is missing a parameter set, or has a value that isn't in the Scenario
+     */
+    public void addExistingTestSets(List<Map<String, String>> testSets) {
+        for (Map<String, String> testSet: testSets) {
+            addExistingRawTestSet(getRawTestSet(testSet));
+        }
+    }
+
+    /**
+     * Marks every molecule of a test set you already have as used. The molecules go through the inventory's updateAllCounts(),
+     * just like a generated test set's would
+     * @param testSet One value index per parameter set, in parameter set order
+     */
+    public void addExistingRawTestSet(int[] testSet) {
+        if (testSet.length != scenario.getParameterSetCount()) {
+            throw new IllegalArgumentException(String.format("A test set needs %d values, not %d", scenario.getParameterSetCount(), testSet.length));
+        }
+        for (int j = 0; j < testSet.length; j++) {
+            if (testSet[j] < 0 || testSet[j] >= scenario.getParameterValuesCount() || scenario.getParameterPositions()[testSet[j]] != j) {
+                throw new IllegalArgumentException(String.format("Value %d of test set %s isn't a value of %s", testSet[j], Arrays.toString(testSet), scenario.getParameterSet(j).getName()));
+            }
+        }
+        inventory.updateAllCounts(testSet);
+        existingTestSets.add(testSet.clone());
+    }
+
+    /**
+     * Carries over a suite generated for an earlier version of this Scenario, so that buildTestCases() only generates the test
+     * sets needed for what changed (a new value, a new parameter set, a new constraint) and most of the suite stays the same.
+     * Each previous test set is translated to the current value indexes (see ScenarioMapping), and then:
+     *
+     *  - if one of its values was removed, or it breaks one of the current constraints, it's dropped
+     *  - if there are new parameter sets, it gets the values for them that capture the most unused molecules (and don't break
+     *    a constraint), one parameter set at a time, in parameter set order. If no value is allowed, it's dropped
+     *
+     * The test sets that are kept are added as existing test sets (see addExistingRawTestSet()). Call this before buildTestCases()
+     * @param previousScenario The Scenario the previous test sets were generated for
+     * @param previousTestSets Raw test sets, as getRawTestSets() returned them for the previous Scenario
+     * @return Whether each previous test set was kept, in order
+     */
+    public boolean[] addPreviousTestSets(Scenario previousScenario, List<int[]> previousTestSets) {
+        ScenarioMapping mapping = new ScenarioMapping(previousScenario, scenario);
+        Exclusions exclusions = scenario.getExclusions();
+        long[] placedValues = exclusions.newValueMask();
+        int[] ordering = new int[ scenario.getParameterSetCount() ];
+        boolean[] kept = new boolean[ previousTestSets.size() ];
+        int keptCount = 0;
+        for (int row = 0; row < previousTestSets.size(); row++) {
+            int[] testSet = mapping.map(previousTestSets.get(row));
+            if (testSet != null && completeTestSet(testSet, ordering, placedValues)) {
+                addExistingRawTestSet(testSet);
+                kept[row] = true;
+                ++keptCount;
+            }
+        }
+        log.debug("Kept {} of {} previous test sets", keptCount, previousTestSets.size());
+        return kept;
+    }
+
+    /**
+     * Checks the values a carried-over test set already has against the constraints, then fills in the positions that are -1
+     * @return false if the test set can't be completed without breaking a constraint
+     */
+    private boolean completeTestSet(int[] testSet, int[] ordering, long[] placedValues) {
+        Exclusions exclusions = scenario.getExclusions();
+        Arrays.fill(placedValues, 0L);
+        int placedCount = 0;
+        for (int position = 0; position < testSet.length; position++) {
+            if (testSet[position] < 0) {
+                continue;
+            }
+            if (!exclusions.isCompatible(testSet[position], placedValues)) {
+                return false;
+            }
+            Exclusions.addToMask(placedValues, testSet[position]);
+            ordering[placedCount++] = position;
+        }
+
+        for (int position = 0; position < testSet.length; position++) {
+            if (testSet[position] >= 0) {
+                continue;
+            }
+            int bestValue = -1;
+            int highestCount = -1;
+            for (int value: scenario.getLegalValues()[position]) {
+                if (!exclusions.isCompatible(value, placedValues)) {
+                    continue;
+                }
+                int currentCount = inventory.numberMoleculesCaptured(value, testSet, ordering, placedCount);
+                if (currentCount > highestCount) {
+                    highestCount = currentCount;
+                    bestValue = value;
+                }
+            }
+            if (bestValue < 0) {
+                return false;
+            }
+            testSet[position] = bestValue;
+            Exclusions.addToMask(placedValues, bestValue);
+            ordering[placedCount++] = position;
+        }
+        return true;
+    }
+
     public void buildTestCases() {
-        int poolSize = 1; // number of candidate testSet arrays to generate before picking one to add to testSets List
-        log.debug("Candidate Pool Size: {}", poolSize);
+        log.debug("Candidate Pool Size: {}", candidatePoolSize);
+        startGeneration();
         while (inventory.getUnusedMolecules().size() > 0) { //keep iterating until all pairs are used
-            // as long as there are unused pairs to account for
+            int[] testSet = nextTestSet();
+            if (testSet != null) {
+                testSets.add(testSet); // Add the best candidate to the main testSets List
+            }
+        } //while loop from hell
+        finishGeneration();
+    }
+
+    /**
+     * Generates test sets until every molecule is covered or the budget runs out, whichever comes first, so a very large
+     * Scenario can be capped at a number of test sets, an amount of time or a fraction of its molecules. The test sets stay in
+     * the order they were generated in, which is the order RowMetrics.getRow() numbers them in, unless setPrioritizing() is
+     * on: then they're put in priority order, both in the result and in getRawTestSets(), so that a partial suite runs its most
+     * valuable test sets first. Coverage is measured against the molecules that were left to cover when this was called, after
+     * any existing test sets
+     * @param budget
+     * @return The test sets generated by this call, and how far they got
+     */
+    public GenerationResult buildTestCases(GenerationBudget budget) {
+        log.debug("Candidate Pool Size: {}", candidatePoolSize);
+        long start = System.nanoTime();
+        long maxNanos = budget.getMaxMillis() > Long.MAX_VALUE / 1000000 ? Long.MAX_VALUE : budget.getMaxMillis() * 1000000;
+        int startingUnusedCount = inventory.getUnusedMolecules().size();
+        int firstRow = testSets.size();
+        int illegalCount = 0;
+        int[] newMoleculeCounts = new int[16];
+        GenerationResult.StopReason stopReason = GenerationResult.StopReason.COVERED;
+
+        startGeneration();
+        while (inventory.getUnusedMolecules().size() > 0) {
+            int coveredCount = startingUnusedCount - illegalCount - inventory.getUnusedMolecules().size();
+            if (testSets.size() - firstRow >= budget.getMaxRows()) {
+                stopReason = GenerationResult.StopReason.ROW_LIMIT;
+                break;
+            }
+            if (System.nanoTime() - start >= maxNanos) {
+                stopReason = GenerationResult.StopReason.TIME_LIMIT;
+                break;
+            }
+            if (coveredCount >= budget.getTargetCoverage() * (startingUnusedCount - illegalCount)) {
+                stopReason = GenerationResult.StopReason.COVERAGE_TARGET;
+                break;
+            }
+            int unusedCount = inventory.getUnusedMolecules().size();
+            int[] testSet = nextTestSet();
+            if (testSet != null) {
+                int row = testSets.size() - firstRow;
+                if (row == newMoleculeCounts.length) {
+                    newMoleculeCounts = Arrays.copyOf(newMoleculeCounts, 2 * row);
+                }
+                newMoleculeCounts[row] = unusedCount - inventory.getUnusedMolecules().size();
+                testSets.add(testSet);
+            } else {
+                illegalCount++;
+            }
+        }
+        finishGeneration();
+
+        List<int[]> generated = testSets.subList(firstRow, testSets.size());
+        if (!prioritizing) {
+            return new GenerationResult(new ArrayList<int[]>(generated), Arrays.copyOf(newMoleculeCounts, generated.size()),
+                    startingUnusedCount - illegalCount, inventory.getUnusedMolecules().size(), stopReason, System.nanoTime() - start);
+        }
+
+        //Put this call's test sets in priority order, counting the ones already run as covered
+        TestSetPrioritizer prioritizer = new TestSetPrioritizer(scenario, Math.min(inventory.getAtomsPerMolecule(), Math.max(scenario.getParameterSetCount(), 2)));
+        for (int[] testSet: existingTestSets) {
+            prioritizer.cover(testSet);
+        }
+        for (int[] testSet: testSets.subList(0, firstRow)) {
+            prioritizer.cover(testSet);
+        }
+        newMoleculeCounts = new int[ generated.size() ];
+        List<int[]> prioritized = prioritizer.prioritize(generated, newMoleculeCounts);
+        generated.clear();
+        testSets.addAll(prioritized);
+
+        return new GenerationResult(new ArrayList<int[]>(prioritized), newMoleculeCounts, startingUnusedCount - illegalCount,
+                inventory.getUnusedMolecules().size(), stopReason, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns an iterator that generates the test sets one at a time, as they're asked for. Each test set is returned as soon as
+     * the inventory has marked its molecules as used, so callers can start using the first test sets while the rest are still
+     * being worked out, or stop early. Test sets from the iterator are not kept, so getRawTestSets() doesn't include them
+     * @return
+     */
+    public Iterator<int[]> testSetIterator() {
+        return new Iterator<int[]>() {
+            private int[] next = null;
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                //Once generation has finished, asking again mustn't start (and tell the listeners about) another one
+                if (exhausted) {
+                    return false;
+                }
+                startGeneration();
+                //A molecule can turn out to be illegal instead of giving us a test set, so keep going until one does
+                while (next == null && inventory.getUnusedMolecules().size() > 0) {
+                    next = nextTestSet();
+                }
+                if (next == null) {
+                    exhausted = true;
+                    finishGeneration();
+                }
+                return next != null;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("Every molecule has been used");
+                }
+                int[] testSet = next;
+                next = null;
+                return testSet;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Picks the best of a pool of candidates, and marks its molecules as used. If the Scenario's constraints keep every
+     * candidate from being completed, any test set the constraints allow around the best molecule is used instead, and only if
+     * there's none at all is the molecule marked illegal
+     * @return The new test set, or null if the best molecule turned out to be illegal
+     */
+    protected int[] nextTestSet() {
+        boolean timed = !listeners.isEmpty();
+        long start = timed ? System.nanoTime() : 0;
+        if (timed) {
+            rowMetrics.reset(rowsGenerated);
+        }
+        int poolSize = candidatePoolSize; // number of candidate testSet arrays to generate before picking one
+        // as long as there are unused pairs to account for
+        if (log.isDebugEnabled()) {
             log.debug("Unused Pair Count: {}", inventory.getUnusedMolecules().size());
-            int[][] candidateSets = new int[poolSize][scenario.getParameterSetCount()]; // holds candidate testSets
-    
+        }
+        if (candidateSets.length != poolSize) {
+            candidateSets = new int[poolSize][]; // holds candidate testSets
+            moleculesCaptured = new int[poolSize];
+        }
+        for (int attempt = 0; attempt < MAX_CONSTRAINED_ATTEMPTS; attempt++) {
+            buildCandidateSets(candidateSets, moleculesCaptured);
+            logCandidateTestSets(candidateSets);
+            int[] bestTestSet = determineBestCandidateSet(candidateSets, moleculesCaptured);
+            if (bestTestSet != null) {
+                return addTestSet(bestTestSet.clone(), start); // the candidate lives in a workspace, which gets reused for the next test set
+            }
+        }
+
+        //The random orderings can keep walking into the same dead end, so check whether there's any way around it before giving up
+        int[] bestMolecule = inventory.getBestMolecule();
+        int[] legalTestSet = findLegalTestSet(bestMolecule);
+        if (legalTestSet != null) {
+            log.debug("None of the candidates around molecule {} could be completed, but a search found a test set that could", new Molecule(bestMolecule));
+            return addTestSet(legalTestSet, start);
+        }
+        log.warn("The constraints don't allow any test set with molecule {} in it, so it won't be covered", new Molecule(bestMolecule));
+        inventory.markIllegal(bestMolecule);
+        if (timed) {
+            int unusedMoleculeCount = inventory.getUnusedMolecules().size();
+            for (GenerationListener listener: listeners) {
+                listener.moleculeIllegal(bestMolecule, unusedMoleculeCount);
+            }
+        }
+        return null;
+    }
+
+    private int[] addTestSet(int[] testSet, long start) {
+        boolean timed = !listeners.isEmpty();
+        long updateStart = timed ? System.nanoTime() : 0;
+        inventory.updateAllCounts(testSet);
+        rowsGenerated++;
+        if (timed) {
+            long end = System.nanoTime();
+            rowMetrics.updateAllCountsNanos = end - updateStart;
+            rowMetrics.nanos = end - start;
+            rowMetrics.unusedMoleculeCount = inventory.getUnusedMolecules().size();
+            rowMetrics.coverageBytes = inventory.getCoverageBytes();
+            for (GenerationListener listener: listeners) {
+                listener.testSetAdded(testSet, rowMetrics);
+            }
+        }
+        return testSet;
+    }
+
+    /**
+     * Looks for any test set with the molecule in it that the constraints allow. The parameter sets are filled in one at a time,
+     * backing up to the last one that still has a value left to try whenever some parameter set that's still empty has no
+     * value left that works with the values placed so far. Unlike the candidates, this doesn't try to capture many unused
+     * molecules; it only settles whether the molecule can be covered at all
+     * @param molecule
+     * @return A new test set, or null if the constraints rule out every test set with the molecule in it
+     */
+    int[] findLegalTestSet(int[] molecule) {
+        Exclusions exclusions = scenario.getExclusions();
+        int[] positions = scenario.getParameterPositions();
+        int[] testSet = new int[ scenario.getParameterSetCount() ];
+        boolean[] filled = new boolean[ testSet.length ];
+        long[] placedValues = exclusions.newValueMask();
+        for (int atom: molecule) {
+            if (!exclusions.isCompatible(atom, placedValues)) {
+                return null;
+            }
+            testSet[ positions[atom] ] = atom;
+            filled[ positions[atom] ] = true;
+            Exclusions.addToMask(placedValues, atom);
+        }
+        int[] emptyPositions = new int[ testSet.length - molecule.length ];
+        int emptyCount = 0;
+        for (int position = 0; position < testSet.length; position++) {
+            if (!filled[position]) {
+                emptyPositions[emptyCount++] = position;
+            }
+        }
+        if (!everyPositionHasAValue(emptyPositions, 0, placedValues)) {
+            return null;
+        }
+        return fillPositions(testSet, emptyPositions, 0, placedValues) ? testSet : null;
+    }
+
+    private boolean fillPositions(int[] testSet, int[] emptyPositions, int next, long[] placedValues) {
+        if (next == emptyPositions.length) {
+            return true;
+        }
+        Exclusions exclusions = scenario.getExclusions();
+        for (int value: scenario.getLegalValues()[ emptyPositions[next] ]) {
+            if (!exclusions.isCompatible(value, placedValues)) {
+                continue;
+            }
+            long[] withValue = placedValues.clone();
+            Exclusions.addToMask(withValue, value);
+            if (everyPositionHasAValue(emptyPositions, next + 1, withValue) && fillPositions(testSet, emptyPositions, next + 1, withValue)) {
+                testSet[ emptyPositions[next] ] = value;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if every position from the given one on still has at least one value that works with the placed values
+     */
+    private boolean everyPositionHasAValue(int[] emptyPositions, int from, long[] placedValues) {
+        Exclusions exclusions = scenario.getExclusions();
+        for (int k = from; k < emptyPositions.length; k++) {
+            boolean hasValue = false;
+            for (int value: scenario.getLegalValues()[ emptyPositions[k] ]) {
+                if (exclusions.isCompatible(value, placedValues)) {
+                    hasValue = true;
+                    break;
+                }
+            }
+            if (!hasValue) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startGeneration() {
+        if (generationStart >= 0 || listeners.isEmpty()) {
+            return;
+        }
+        generationStart = System.nanoTime();
+        int unusedMoleculeCount = inventory.getUnusedMolecules().size();
+        long coverageBytes = inventory.getCoverageBytes();
+        for (GenerationListener listener: listeners) {
+            listener.generationStarted(unusedMoleculeCount, coverageBytes);
+        }
+    }
+
+    private void finishGeneration() {
+        if (generationStart < 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - generationStart;
+        generationStart = -1;
+        for (GenerationListener listener: listeners) {
+            listener.generationFinished(rowsGenerated, nanos);
+        }
+    }
+
+    /**
+     * Builds (and scores) a pool of candidate test sets, all starting from the same best molecule. The first candidate uses
+     * this data set's own random number generator (so a pool of one gives the same results it always has), and every other
+     * candidate gets its own generator, seeded up front. That way the results don't depend on how the work is spread across threads.
+     * The candidates are built in this data set's workspaces, so they're only good until the next call
+     * @param candidateSets Filled in with the candidates (null for candidates that ran into a constraint)
+     * @param moleculesCaptured Filled in with the number of unused molecules each candidate captures (-1 for null candidates)
+     */
+    protected void buildCandidateSets(final int[][] candidateSets, final int[] moleculesCaptured) {
+        int poolSize = candidateSets.length;
+        final boolean timed = !listeners.isEmpty();
+        long bestMoleculeStart = timed ? System.nanoTime() : 0;
+        final int[] bestMolecule = inventory.getBestMolecule();
+        if (timed) {
+            rowMetrics.bestMoleculeNanos += System.nanoTime() - bestMoleculeStart;
+        }
+        ensureWorkspaces(poolSize);
+        final Workspace[] workspaces = this.workspaces;
+        final Random[] randoms = this.candidateRandoms;
+        randoms[0] = r;
+        for (int candidate = 1; candidate < poolSize; ++candidate) {
+            randoms[candidate].setSeed(r.nextLong()); // same sequence as a new Random(seed)
+        }
+
+        if (executor == null || poolSize == 1) {
+            long candidateStart = timed ? System.nanoTime() : 0;
             for (int candidate = 0; candidate < poolSize; ++candidate) {
-                log.debug("Candidate: {}", candidate);
-                int[] testSet = getSingleTestSet();
-                logCandidateTestSet(testSet);
-                candidateSets[candidate] = testSet;  // add candidate testSet to candidateSets array
+                candidateSets[candidate] = getSingleTestSet(bestMolecule, randoms[candidate], workspaces[candidate]);  // add candidate testSet to candidateSets array
+                moleculesCaptured[candidate] = scoreCandidate(candidateSets[candidate]);
+                logCandidateTestSet(candidateSets[candidate]);
             } // for each candidate testSet
-            logCandidateTestSets(candidateSets);
-            int[] bestTestSet = determineBestCandidateSet(candidateSets);
+            if (timed) {
+                rowMetrics.singleTestSetNanos += System.nanoTime() - candidateStart;
+            }
+            return;
+        }
 
-            testSets.add(bestTestSet); // Add the best candidate to the main testSets List
-            inventory.updateAllCounts(bestTestSet);
-        } //while loop from hell
+        //Nothing in the inventory changes until the best candidate is picked, so the candidates only ever read from it
+        if (candidateNanos.length != poolSize) {
+            candidateNanos = new long[poolSize];
+        }
+        final long[] nanos = candidateNanos;
+        List<Future<?>> futures = new ArrayList<Future<?>>(poolSize);
+        for (int candidate = 0; candidate < poolSize; ++candidate) {
+            final int index = candidate;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    long candidateStart = timed ? System.nanoTime() : 0;
+                    candidateSets[index] = getSingleTestSet(bestMolecule, randoms[index], workspaces[index]);
+                    moleculesCaptured[index] = scoreCandidate(candidateSets[index]);
+                    if (timed) {
+                        nanos[index] = System.nanoTime() - candidateStart;
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future: futures) {
+            Futures.waitFor(future, "generating candidate test sets");
+        }
+        if (timed) {
+            for (long candidateNanos: nanos) {
+                rowMetrics.singleTestSetNanos += candidateNanos;
+            }
+        }
     }
+
+    private void ensureWorkspaces(int poolSize) {
+        if (workspaces.length == poolSize) {
+            return;
+        }
+        workspaces = new Workspace[poolSize];
+        candidateRandoms = new Random[poolSize];
+        for (int candidate = 0; candidate < poolSize; ++candidate) {
+            workspaces[candidate] = new Workspace(scenario);
+            candidateRandoms[candidate] = new Random();
+        }
+    }
+
+    private int scoreCandidate(int[] candidateSet) {
+        return candidateSet == null ? -1 : inventory.numberMoleculesCaptured(candidateSet);
+    }
+
     
-    //This is hard-coded for Strings right now--should be able to refactor the generic back in later
+    //This is hard-coded for Strings--use newTestSetView() for any other kind of value
     public List<Map<String, String>> getTestSets() {
         List<int[]> testSetIndexes = getRawTestSets();
         List<Map<String, String>> completeDataSet = new ArrayList<Map<String, String>>();
+        TestSetView view = newTestSetView();
         for (int[] testSetIndex: testSetIndexes) {
-            Map<String, String> singleTestSet = new LinkedHashMap<String, String>();
-            for (int j = 0; j < scenario.getParameterSetCount(); j++) {
-                String value = (String) scenario.getParameterValues().get(testSetIndex[j]);
-                singleTestSet.put(scenario.getParameterSet(scenario.getParameterPositions()[testSetIndex[j]]).getName(), value);
-            }
-            completeDataSet.add(singleTestSet);
+            completeDataSet.add(getTestSet(testSetIndex, view));
         }
         return completeDataSet;
     }
+
+    /**
+     * Turns one raw test set (from getRawTestSets() or testSetIterator()) into a map of parameter set names to values
+     * @param testSetIndex
+     * @return
+     */
+    public Map<String, String> getTestSet(int[] testSetIndex) {
+        return getTestSet(testSetIndex, newTestSetView());
+    }
+
+    private Map<String, String> getTestSet(int[] testSetIndex, TestSetView view) {
+        view.with(testSetIndex);
+        Map<String, String> singleTestSet = new LinkedHashMap<String, String>();
+        for (int j = 0; j < view.getColumnCount(); j++) {
+            singleTestSet.put(view.getName(j), (String) view.get(j));
+        }
+        return singleTestSet;
+    }
+
+    /**
+     * Returns a new typed view of the raw test sets, for parameter sets whose values aren't Strings. See TestSetView
+     * @return
+     */
+    public TestSetView newTestSetView() {
+        return new TestSetView(scenario);
+    }
     
-    //It's hard to figure out how to break this up into smaller chunks--everything in inter-dependent
+    /**
+     * Turns a map of parameter set names to values back into a raw test set; the opposite of getTestSet()
+     * @param testSet
+     * @return One value index per parameter set, in parameter set order
+     * @throws IllegalArgumentException If the test set is missing a parameter set, or has a value that isn't in the Scenario
+     */
+    public int[] getRawTestSet(Map<String, String> testSet) {
+        int[] rawTestSet = new int[ scenario.getParameterSetCount() ];
+        for (int j = 0; j < scenario.getParameterSetCount(); j++) {
+            ParameterSet<?> parameterSet = scenario.getParameterSet(j);
+            String value = testSet.get(parameterSet.getName());
+            if (value == null) {
+                throw new IllegalArgumentException("The test set " + testSet + " has no value for " + parameterSet.getName());
+            }
+            int index = -1;
+            for (int i = 0; i < parameterSet.getCount() && index < 0; i++) {
+                if (value.equals(String.valueOf(parameterSet.getValue(i)))) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                throw new IllegalArgumentException(String.format("%s isn't a value of %s", value, parameterSet.getName()));
+            }
+            rawTestSet[j] = scenario.getLegalValues()[j][index];
+        }
+        return rawTestSet;
+    }
+
+    /**
+     * Writes the generated test sets in the compact columnar format (see ColumnarSuiteWriter), which is far smaller than the
+     * maps getTestSets() returns, and can be read back in place with ColumnarSuiteReader
+     * @param file
+     * @throws IOException
+     */
+    public void writeColumnar(File file) throws IOException {
+        ColumnarSuiteWriter.write(scenario, testSets, file);
+    }
+
     protected int[] getSingleTestSet() {
-        int[] bestMolecule = inventory.getBestMolecule();
-        
-        int firstPos = scenario.getParameterPositions()[ bestMolecule[0] ];  // position of first parameter set from best unused pair
-        int secondPos = scenario.getParameterPositions()[ bestMolecule[1] ]; // position of second parameter set from best unused pair
-        log.debug("The best pair belongs at positions {} and {}", firstPos, secondPos);
-        
-        // place two parameter values from best unused pair into candidate testSet
-        int[] testSet = new int[ scenario.getParameterSetCount() ]; // make an empty candidate testSet
-        testSet[firstPos] = bestMolecule[0];
-        testSet[secondPos] = bestMolecule[1];
+        return getSingleTestSet(inventory.getBestMolecule(), r);
+    }
+
+    /**
+     * Builds one candidate around the best molecule, filling in the rest of the parameter sets in a random order with whichever
+     * value captures the most unused molecules. Values that the Scenario's constraints rule out alongside the values placed so
+     * far are skipped
+     * @param bestMolecule
+     * @param random
+     * @return The candidate, or null if some parameter set had no value left that the constraints allow
+     */
+    protected int[] getSingleTestSet(int[] bestMolecule, Random random) {
+        return getSingleTestSet(bestMolecule, random, new Workspace(scenario));
+    }
+
+    /**
+     * Builds one candidate in the given workspace, without allocating anything
+     * @return The workspace's test set, or null if some parameter set had no value left that the constraints allow
+     */
+    //It's hard to figure out how to break this up into smaller chunks--everything in inter-dependent
+    int[] getSingleTestSet(int[] bestMolecule, Random random, Workspace workspace) {
+        Exclusions exclusions = scenario.getExclusions();
+        long[] placedValues = null;
+        if (!exclusions.isEmpty() || valueMaskScorer != null) {
+            placedValues = workspace.placedValues;
+            Arrays.fill(placedValues, 0L);
+        }
+        boolean debug = log.isDebugEnabled();
+
+        // place the values from the best unused molecule into candidate testSet, at the positions of their parameter sets
+        int[] testSet = workspace.testSet; // every position gets filled in below
+        if (workspace.moleculePositions.length != bestMolecule.length) {
+            workspace.moleculePositions = new int[ bestMolecule.length ];
+        }
+        int[] moleculePositions = workspace.moleculePositions;
+        for (int k = 0; k < bestMolecule.length; k++) {
+            moleculePositions[k] = scenario.getParameterPositions()[ bestMolecule[k] ];
+            testSet[ moleculePositions[k] ] = bestMolecule[k];
+            if (placedValues != null) {
+                Exclusions.addToMask(placedValues, bestMolecule[k]);
+            }
+        }
+        if (debug) {
+            log.debug("The best molecule belongs at positions {}", Arrays.toString(moleculePositions));
+        }
 
-        int[] ordering = getParameterOrdering(firstPos, secondPos);
+        int[] ordering = fillParameterOrdering(workspace.ordering, random, moleculePositions);
         
-        // for remaining parameter positions in candidate testSet, try each possible legal value, picking the one which captures the most unused pair
-        for (int i = 2; i < scenario.getParameterSetCount(); i++) {
+        // for remaining parameter positions in candidate testSet, try each possible legal value, picking the one which captures the most unused molecules
+        for (int i = bestMolecule.length; i < scenario.getParameterSetCount(); i++) {
             int currPos = ordering[i];
             int[] possibleValues = scenario.getLegalValues()[currPos];
-            logPossibleValues(currPos, possibleValues);
+            if (debug) {
+                logPossibleValues(currPos, possibleValues);
+            }
             
-            int highestCount = 0;
-            int bestJ = 0;
+            int highestCount = -1;
+            int bestJ = -1;
             for (int j=0; j < possibleValues.length; j++) {
-                int currentCount = 0;
-                for (int p = 0; p < i; ++p) {
-                    int[] candidatePair = new int[] { possibleValues[j], testSet[ordering[p]] };
-                    if (inventory.getUnusedMoleculesSearch()[candidatePair[0]][candidatePair[1]] == 1 ||
-                        inventory.getUnusedMoleculesSearch()[candidatePair[1]][candidatePair[0]] == 1)
-                        ++currentCount;
+                if (placedValues != null && !exclusions.isCompatible(possibleValues[j], placedValues)) {
+                    continue;
                 }
+                int currentCount = valueMaskScorer != null
+                        ? valueMaskScorer.numberMoleculesCaptured(possibleValues[j], placedValues)
+                        : inventory.numberMoleculesCaptured(possibleValues[j], testSet, ordering, i);
                 if (currentCount > highestCount) {
                     highestCount = currentCount;
                     bestJ = j;
                   }
             }
-            log.debug(String.format("Best possible value: [%d: %s], Parameter Set [%d: %s], Test Set Position %d", possibleValues[bestJ], scenario.getParameterValues().get(possibleValues[bestJ]), i, scenario.getParameterSet(currPos).getName(), currPos));
+            if (bestJ < 0) {
+                log.debug("No value of Parameter Set [{}: {}] is allowed with the values placed so far", currPos, scenario.getParameterSet(currPos).getName());
+                return null;
+            }
+            if (debug) {
+                log.debug(String.format("Best possible value: [%d: %s], Parameter Set [%d: %s], Test Set Position %d", possibleValues[bestJ], scenario.getParameterValues().get(possibleValues[bestJ]), i, scenario.getParameterSet(currPos).getName(), currPos));
+            }
             testSet[currPos] = possibleValues[bestJ];
+            if (placedValues != null) {
+                Exclusions.addToMask(placedValues, possibleValues[bestJ]);
+            }
         } // i -- each testSet position 
 
         return testSet;
     }
     
     protected int[] determineBestCandidateSet(int[][] candidateSets) {
+        int[] moleculesCaptured = new int[candidateSets.length];
+        for (int i = 0; i < candidateSets.length; ++i) {
+            moleculesCaptured[i] = scoreCandidate(candidateSets[i]);
+        }
+        return determineBestCandidateSet(candidateSets, moleculesCaptured);
+    }
+
+    /**
+     * Picks the candidate that captures the most unused molecules
+     * @param candidateSets
+     * @param moleculesCaptured The score of each candidate
+     * @return The best candidate. Candidates that ran into a constraint are null, and score -1, so this is only null when every
+     *         candidate did
+     */
+    protected int[] determineBestCandidateSet(int[][] candidateSets, int[] moleculesCaptured) {
         // Iterate through candidateSets to determine the best candidate
         r.setSeed(r.nextLong());
         int indexOfBestCandidate = r.nextInt(candidateSets.length); // pick a random index as best
-        int mostPairsCaptured = inventory.numberMoleculesCaptured(candidateSets[indexOfBestCandidate]);
+        int mostPairsCaptured = moleculesCaptured[indexOfBestCandidate];
    
         // Determine "best" candidate to use
         for (int i = 0; i < candidateSets.length; ++i) {
-            int pairsCaptured = inventory.numberMoleculesCaptured(candidateSets[i]);
+            int pairsCaptured = moleculesCaptured[i];
             if (pairsCaptured > mostPairsCaptured) {
                 mostPairsCaptured = pairsCaptured;
                 indexOfBestCandidate = i;
@@ -121,32 +821,59 @@ public class TestDataSet {
     }
     
     protected int[] getParameterOrdering(int firstPos, int secondPos) {
+        return getParameterOrdering(new int[] { firstPos, secondPos });
+    }
+
+    /**
+     * Generates a random order in which to fill in the parameter positions, starting with the given positions (in order)
+     * @param fixedPositions The positions that have already been filled in by the best molecule
+     * @return
+     */
+    protected int[] getParameterOrdering(int... fixedPositions) {
+        return getParameterOrdering(r, fixedPositions);
+    }
+
+    protected int[] getParameterOrdering(Random random, int... fixedPositions) {
+        return fillParameterOrdering(new int[scenario.getLegalValues().length], random, fixedPositions);
+    }
+
+    private int[] fillParameterOrdering(int[] ordering, Random random, int[] fixedPositions) {
         // generate a random order to fill parameter positions
-        int[] ordering = new int[scenario.getLegalValues().length];
         for (int i = 0; i < scenario.getLegalValues().length; i++) { // initially all in order
             ordering[i] = i;
         }
         
-        // put firstPos at ordering[0] && secondPos at ordering[1]
-        ordering[0] = firstPos;
-        ordering[firstPos] = 0;
-   
-        int t = ordering[1];
-        ordering[1] = secondPos;
-        ordering[secondPos] = t;
+        // put fixedPositions[0] at ordering[0], fixedPositions[1] at ordering[1], etc
+        for (int k = 0; k < fixedPositions.length; k++) {
+            int current = k;
+            while (ordering[current] != fixedPositions[k]) {
+                current++;
+            }
+            ordering[current] = ordering[k];
+            ordering[k] = fixedPositions[k];
+        }
    
-        // shuffle ordering[2] thru ordering[last]
-        for (int i = 2; i < ordering.length; i++) { // Knuth shuffle. start at i=2 because want first two slots left alone
-            int j = r.nextInt(ordering.length - i) + i;
+        // shuffle the rest of the ordering
+        for (int i = fixedPositions.length; i < ordering.length; i++) { // Knuth shuffle. start after the fixed positions because want those slots left alone
+            int j = random.nextInt(ordering.length - i) + i;
             int temp = ordering[j];
             ordering[j] = ordering[i];
             ordering[i] = temp;
         }
-        log.debug("Order: {}", Arrays.toString(ordering));
+        if (log.isDebugEnabled()) {
+            log.debug("Order: {}", Arrays.toString(ordering));
+        }
         return ordering;
     }
     
     private void logCandidateTestSet(int[] testSet) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        if (testSet == null) {
+            log.debug("Candidate Test Set ran into a constraint");
+            return;
+        }
         log.debug("Adding candidate Test Molecules to candidateSets array: ");
         log.debug("Candidate Test Set (indexes): {}", Arrays.toString(testSet));
         for ( int i = 0; i < testSet.length; i++ ) {
@@ -162,10 +889,13 @@ public class TestDataSet {
     }
     
     private void logCandidateTestSets( int[][] candidateSets ) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
         log.debug( "Candidate Test Molecules: " );
         for (int i = 0; i < candidateSets.length; ++i) {
             int[] curr = candidateSets[i];
-            log.debug(String.format(" Parameter Set %d: Current: %s, Captures: %d", i, Arrays.toString(curr), inventory.numberMoleculesCaptured(curr)));
+            log.debug(String.format(" Parameter Set %d: Current: %s, Captures: %d", i, Arrays.toString(curr), scoreCandidate(curr)));
         }
     }
 
@@ -183,6 +913,9 @@ public class TestDataSet {
 
     public void logFullCombinationCount() {
         log.info("All possible combinations: {}", inventory.getFullCombinationCount());
+        if (!existingTestSets.isEmpty()) {
+            log.info("       Existing test sets: {}", existingTestSets.size());
+        }
         log.info("      After set reduction: {}", this.getRawTestSets().size());
     }
 }
@@ -0,0 +1,90 @@
+package com.rmn.pairwise;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts test sets in the order that covers the most molecules soonest: first the test set with the most molecules, then the
+ * one with the most molecules the first one missed, and so on. Running only the first N test sets of the result then covers
+ * (nearly) as much as any N of them could.
+ *
+ * A test set's count of new molecules only ever goes down as others are picked, so the test sets are kept in a MoleculeQueue
+ * (by position, with the count as the weight) and only recounted when they reach the front. Ties keep the original order
+ */
+public class TestSetPrioritizer {
+    private final MoleculeIndex moleculeIndex;
+    private final CoverageMatrix coverageMatrix;
+    private final int atomsPerMolecule;
+    private final int[] positions;
+    private final int[] atoms;
+
+    /**
+     * @param scenario
+     * @param atomsPerMolecule The size of the molecules to count
+     */
+    public TestSetPrioritizer(Scenario scenario, int atomsPerMolecule) {
+        this.moleculeIndex = new MoleculeIndex(scenario, atomsPerMolecule);
+        this.coverageMatrix = new CoverageMatrix(moleculeIndex);
+        this.atomsPerMolecule = atomsPerMolecule;
+        this.positions = new int[atomsPerMolecule];
+        this.atoms = new int[atomsPerMolecule];
+    }
+
+    /**
+     * Counts the molecules of a test set that has already been run (an existing suite, say) as covered, so they're not worth
+     * anything to the test sets being prioritized
+     * @param testSet
+     */
+    public void cover(int[] testSet) {
+        countNewMolecules(testSet, true);
+    }
+
+    /**
+     * Returns the test sets in priority order. The molecules of every test set are covered afterwards
+     * @param testSets Raw test sets
+     * @param newMoleculeCounts If not null, filled in with the number of new molecules each test set in the result covers
+     * @return A new list
+     */
+    public List<int[]> prioritize(final List<int[]> testSets, int[] newMoleculeCounts) {
+        final boolean[] picked = new boolean[ testSets.size() ];
+        MoleculeQueue queue = new MoleculeQueue(testSets.size(), new MoleculeQueue.Weigher() {
+            @Override
+            public int weightOf(int row) {
+                return picked[row] ? -1 : countNewMolecules(testSets.get(row), false);
+            }
+        });
+
+        List<int[]> prioritized = new ArrayList<int[]>(testSets.size());
+        for (int row = queue.peekBest(); row >= 0; row = queue.peekBest()) {
+            int newMolecules = countNewMolecules(testSets.get(row), true);
+            if (newMoleculeCounts != null) {
+                newMoleculeCounts[ prioritized.size() ] = newMolecules;
+            }
+            picked[row] = true;
+            prioritized.add(testSets.get(row));
+        }
+        return prioritized;
+    }
+
+    /**
+     * Counts the molecules of the test set that aren't covered yet, and covers them if asked to
+     */
+    private int countNewMolecules(int[] testSet, boolean cover) {
+        int newMolecules = 0;
+        if (testSet.length < atomsPerMolecule) {
+            return newMolecules;
+        }
+        int[] positions = OrderNInventory.resetCombination(this.positions, atomsPerMolecule);
+        do {
+            //The values of a test set go up with the parameter set, so the atoms come out in ascending order
+            for (int k = 0; k < atomsPerMolecule; k++) {
+                atoms[k] = testSet[ positions[k] ];
+            }
+            int ordinal = moleculeIndex.ordinalOf(atoms);
+            if (cover ? coverageMatrix.markUsed(ordinal) : coverageMatrix.isUnused(ordinal)) {
+                ++newMolecules;
+            }
+        } while (MoleculeIndex.nextCombination(positions, testSet.length));
+        return newMolecules;
+    }
+}
@@ -0,0 +1,138 @@
+package com.rmn.pairwise;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A typed look at one raw test set at a time, for parameter sets whose values aren't Strings (enums, domain objects). The
+ * table of columns is worked out once, when the view is created; after that, pointing the view at a raw test set (with())
+ * and reading a column are both just array lookups, and nothing is allocated per test set.
+ *
+ *  TestSetView testSet = dataSet.newTestSetView();
+ *  TestSetView.Column&lt;Browser&gt; browser = testSet.column(browsers);
+ *  for (int[] rawTestSet: dataSet.getRawTestSets()) {
+ *      Browser value = testSet.with(rawTestSet).get(browser);
+ *  }
+ *
+ * A view holds the test set it's pointing at, so each thread needs its own
+ */
+public class TestSetView {
+
+    /**
+     * A typed handle on one column (parameter set) of a view
+     * @param <T> The type of the parameter set's values
+     */
+    public static final class Column<T> {
+        private final int index;
+        private final String name;
+
+        private Column(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        /**
+         * The position of the parameter set in the Scenario
+         * @return
+         */
+        public int getIndex() { return index; }
+
+        public String getName() { return name; }
+    }
+
+    private final ParameterSet<?>[] parameterSets;
+    private final Object[][] values;
+    private final int[] valueOffsets;
+    private final Map<String, Integer> columnsByName = new HashMap<String, Integer>();
+    private int[] testSet = null;
+
+    public TestSetView(Scenario scenario) {
+        int columnCount = scenario.getParameterSetCount();
+        this.parameterSets = new ParameterSet<?>[columnCount];
+        this.values = new Object[columnCount][];
+        this.valueOffsets = scenario.getValueOffsets();
+        for (int column = 0; column < columnCount; column++) {
+            parameterSets[column] = scenario.getParameterSet(column);
+            values[column] = parameterSets[column].getParameterValues().toArray();
+            columnsByName.put(parameterSets[column].getName(), column);
+        }
+    }
+
+    /**
+     * Returns the column for the parameter set, which has to be one of the Scenario's own (the same object)
+     * @param parameterSet
+     * @param <T>
+     * @return
+     */
+    public <T> Column<T> column(ParameterSet<T> parameterSet) {
+        for (int column = 0; column < parameterSets.length; column++) {
+            if (parameterSets[column] == parameterSet) {
+                return new Column<T>(column, parameterSet.getName());
+            }
+        }
+        throw new IllegalArgumentException("The parameter set " + parameterSet.getName() + " isn't part of the Scenario");
+    }
+
+    /**
+     * Returns the column for the named parameter set. The type of the values can't be checked, so it's up to the caller
+     * @param name
+     * @param <T>
+     * @return
+     */
+    public <T> Column<T> column(String name) {
+        Integer column = columnsByName.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("The Scenario has no parameter set named " + name);
+        }
+        return new Column<T>(column, name);
+    }
+
+    /**
+     * Points the view at a raw test set. The array isn't copied
+     * @param testSet One value index per parameter set, as in TestDataSet.getRawTestSets()
+     * @return This view
+     */
+    public TestSetView with(int[] testSet) {
+        if (testSet.length != parameterSets.length) {
+            throw new IllegalArgumentException(String.format("A test set needs %d values, not %d", parameterSets.length, testSet.length));
+        }
+        this.testSet = testSet;
+        return this;
+    }
+
+    public int getColumnCount() { return parameterSets.length; }
+
+    public String getName(int column) { return parameterSets[column].getName(); }
+
+    /**
+     * Returns the value of the column in the current test set
+     * @param column
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Column<T> column) {
+        return (T) get(column.index);
+    }
+
+    /**
+     * Returns the value of the column in the current test set
+     * @param column
+     * @return
+     */
+    public Object get(int column) {
+        return values[column][ getValueIndex(column) ];
+    }
+
+    /**
+     * Returns the index of the current test set's value within its parameter set
+     * @param column
+     * @return
+     */
+    public int getValueIndex(int column) {
+        if (testSet == null) {
+            throw new IllegalStateException("The view isn't pointing at a test set yet");
+        }
+        return testSet[column] - valueOffsets[column];
+    }
+}
@@ -0,0 +1,19 @@
+package com.rmn.pairwise;
+
+/**
+ * An inventory that can score a candidate value against a mask of the values placed so far (the same shape as
+ * Exclusions.newValueMask()), instead of against the positions of the test set one at a time. TestDataSet keeps the mask up
+ * to date while it builds a test set, and uses this in place of IInventory.numberMoleculesCaptured(int, int[], int[], int)
+ * whenever the inventory implements it
+ */
+public interface ValueMaskScorer {
+
+    /**
+     * Returns the number of unused molecules the given value would capture if it were added to a test set holding the placed
+     * values. Must give the same answer as IInventory.numberMoleculesCaptured(int, int[], int[], int) for the same test set
+     * @param value The index of the candidate value
+     * @param placedValues A mask with a bit set for each value placed so far
+     * @return
+     */
+    int numberMoleculesCaptured(int value, long[] placedValues);
+}
@@ -0,0 +1,108 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ColumnarSuiteTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PARAMETER_SET =
+            "Browser: Chrome, Firefox, IE, Safari\n" +
+            "Page Type: Home, Store, Landing, Search Results, Community, 404, Category\n" +
+            "Login Type: Organic, Direct, EmailGenerated\n" +
+            "User Type: Administrator, User, Operations";
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET);
+        TestDataSet dataSet = inventory.getTestDataSet();
+        File file = folder.newFile("suite.pwc");
+        dataSet.writeColumnar(file);
+
+        ColumnarSuiteReader reader = ColumnarSuiteReader.open(file);
+        List<Map<String, String>> testSets = dataSet.getTestSets();
+        Assert.assertEquals(testSets.size(), reader.getRowCount());
+        Assert.assertEquals(4, reader.getColumnCount());
+        Assert.assertEquals("Page Type", reader.getColumnName(1));
+        Assert.assertEquals(1, reader.getColumn("Page Type"));
+        Assert.assertEquals(-1, reader.getColumn("Nope"));
+        Assert.assertEquals("Search Results", reader.getValues(1)[3]);
+        for (int row = 0; row < testSets.size(); row++) {
+            for (int column = 0; column < reader.getColumnCount(); column++) {
+                Assert.assertEquals(testSets.get(row).get(reader.getColumnName(column)), reader.getValue(row, column));
+            }
+        }
+    }
+
+    @Test
+    public void testRowsTakeOneBytePerValue() throws IOException {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET);
+        TestDataSet dataSet = inventory.getTestDataSet();
+        File empty = folder.newFile("empty.pwc");
+        File full = folder.newFile("full.pwc");
+        ColumnarSuiteWriter.write(inventory.getScenario(), Collections.<int[]>emptyList(), empty);
+        dataSet.writeColumnar(full);
+
+        Assert.assertEquals(dataSet.getRawTestSets().size() * 4, full.length() - empty.length());
+        Assert.assertEquals(0, ColumnarSuiteReader.open(empty).getRowCount());
+    }
+
+    @Test
+    public void testWideColumns() throws IOException {
+        StringBuilder contents = new StringBuilder("Small: a, b\nBig: ");
+        for (int i = 0; i < 300; i++) {
+            contents.append(i == 0 ? "" : ", ").append("v").append(i);
+        }
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(contents.toString());
+        List<int[]> testSets = new ArrayList<int[]>();
+        for (int i = 0; i < 300; i++) {
+            testSets.add(new int[] { i % 2, 2 + i });
+        }
+        File file = folder.newFile("wide.pwc");
+        ColumnarSuiteWriter.write(scenario, testSets, file);
+
+        ColumnarSuiteReader reader = ColumnarSuiteReader.open(file);
+        for (int i = 0; i < 300; i++) {
+            Assert.assertEquals(i % 2, reader.getValueIndex(i, 0));
+            Assert.assertEquals(i, reader.getValueIndex(i, 1));
+            Assert.assertEquals("v" + i, reader.getValue(i, 1));
+        }
+    }
+
+    @Test
+    public void testParameterSetWithNoValues() throws IOException {
+        Scenario scenario = new Scenario.Builder()
+                .addParameterSet("Browser", Arrays.asList("Chrome", "Firefox"))
+                .addParameterSet("Locale", Collections.<String>emptyList())
+                .build();
+        File file = folder.newFile("novalues.pwc");
+        try {
+            ColumnarSuiteWriter.write(scenario, Collections.<int[]>emptyList(), file);
+            Assert.fail("A parameter set with no values can't be written");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("Locale"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAColumnarSuite() throws IOException {
+        File file = folder.newFile("junk.pwc");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("Param0: a, b".getBytes("UTF-8"));
+        out.close();
+        ColumnarSuiteReader.open(file);
+    }
+}
@@ -0,0 +1,268 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ConstraintTests {
+
+    private static final String CONSTRAINED_SET =
+            "Browser: Safari, Chrome, Firefox\n" +
+            "OS: Windows, Mac, Linux\n" +
+            "Locale: en, fr\n" +
+            "Browser = Safari => OS = Mac\n" +
+            "OS = Linux => Locale != fr";
+
+    /**
+     * Neither constraint rules out [A = a1, C = c1] on its own, but there's no B that works with both
+     */
+    private static final String IMPOSSIBLE_PAIR_SET =
+            "A: a1, a2\n" +
+            "B: b1, b2\n" +
+            "C: c1, c2\n" +
+            "A = a1 => B = b1\n" +
+            "C = c1 => B = b2";
+
+    /**
+     * Each last value forces the next parameter set's last value, so a2 forces b2, c2 and so on down to h2. Lots of pairs with a
+     * last value in them can still be covered, but only by a test set that follows the chain from that value on, which the
+     * random orderings of the candidates rarely do
+     */
+    private static final String CHAINED_SET =
+            "A: a0, a1, a2\n" +
+            "B: b0, b1, b2\n" +
+            "C: c0, c1, c2\n" +
+            "D: d0, d1, d2\n" +
+            "E: e0, e1, e2\n" +
+            "F: f0, f1, f2\n" +
+            "G: g0, g1, g2\n" +
+            "H: h0, h1, h2\n" +
+            "A = a2 => B = b2\n" +
+            "B = b2 => C = c2\n" +
+            "C = c2 => D = d2\n" +
+            "D = d2 => E = e2\n" +
+            "E = e2 => F = f2\n" +
+            "F = f2 => G = g2\n" +
+            "G = g2 => H = h2";
+
+    @Test
+    public void testParseConstraint() {
+        Constraint constraint = PairwiseInventoryFactory.processConstraintLine("Browser = Safari, Chrome => OS != Windows");
+        Assert.assertEquals("Browser", constraint.getIfParameter());
+        Assert.assertFalse(constraint.isIfNegated());
+        Assert.assertEquals(Arrays.asList("Safari", "Chrome"), constraint.getIfValues());
+        Assert.assertEquals("OS", constraint.getThenParameter());
+        Assert.assertTrue(constraint.isThenNegated());
+        Assert.assertEquals(Arrays.asList("Windows"), constraint.getThenValues());
+        Assert.assertEquals("Browser = Safari, Chrome => OS != Windows", constraint.toString());
+    }
+
+    @Test
+    public void testConstraintLinesAreNotParameterSets() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+        Assert.assertEquals("There should be 3 Parameter Sets", 3, scenario.getParameterSetCount());
+        Assert.assertEquals("There should be 2 Constraints", 2, scenario.getConstraints().size());
+    }
+
+    @Test
+    public void testExclusions() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+        Exclusions exclusions = scenario.getExclusions();
+        // values: Safari 0, Chrome 1, Firefox 2, Windows 3, Mac 4, Linux 5, en 6, fr 7
+        Assert.assertTrue(exclusions.isExcluded(0, 3));
+        Assert.assertTrue(exclusions.isExcluded(5, 0));
+        Assert.assertFalse(exclusions.isExcluded(0, 4));
+        Assert.assertFalse(exclusions.isExcluded(1, 3));
+        Assert.assertTrue(exclusions.isExcluded(5, 7));
+        Assert.assertFalse(exclusions.isExcluded(5, 6));
+        Assert.assertFalse(exclusions.isExcluded(0, 7));
+
+        long[] placed = exclusions.newValueMask();
+        Exclusions.addToMask(placed, 0);
+        Assert.assertFalse("Windows can't go with Safari", exclusions.isCompatible(3, placed));
+        Assert.assertTrue("Mac can go with Safari", exclusions.isCompatible(4, placed));
+        Assert.assertTrue("fr has nothing to do with Safari", exclusions.isCompatible(7, placed));
+    }
+
+    @Test
+    public void testUnconstrainedScenarioHasNoExclusions() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.PARAMETER_SET);
+        Assert.assertTrue(scenario.getExclusions().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownValue() {
+        PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET + "\nBrowser = Opera => OS = Mac");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownParameterSet() {
+        PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET + "\nDevice = Phone => OS = Mac");
+    }
+
+    @Test
+    public void testExcludedMoleculesAreNeverUnused() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET);
+        // Safari with Windows and Linux, Linux with fr
+        Assert.assertEquals(21, inventory.getMoleculeCount());
+        Assert.assertEquals(18, inventory.getUnusedMolecules().size());
+        Assert.assertFalse(inventory.isUnusedMolecule(0, 3));
+        Assert.assertTrue(inventory.getAllMolecules().get(((PairwiseInventory) inventory).getMoleculeIndex().ordinalOf(0, 3)).isIllegal());
+        Assert.assertTrue(inventory.isUnusedMolecule(0, 4));
+    }
+
+    @Test
+    public void testPairwiseTestSetsFollowConstraints() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET);
+        Scenario scenario = inventory.getScenario();
+        List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+
+        assertNoExcludedPairs(scenario, testSets);
+        assertAllAllowedPairsCovered(scenario, testSets);
+    }
+
+    @Test
+    public void testOrderNTestSetsFollowConstraints() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET + "\nSize: small, large", 3);
+        Scenario scenario = inventory.getScenario();
+        List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+
+        assertNoExcludedPairs(scenario, testSets);
+        assertAllAllowedPairsCovered(scenario, testSets);
+        Assert.assertEquals("Every allowed triple should have been covered", 0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testImpossibleMoleculeIsSkipped() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(IMPOSSIBLE_PAIR_SET);
+        TestDataSet dataSet = inventory.getTestDataSet();
+
+        assertNoExcludedPairs(inventory.getScenario(), dataSet.getRawTestSets());
+        for (Map<String, String> testSet: dataSet.getTestSets()) {
+            Assert.assertFalse("a1 and c1 can't both be used", "a1".equals(testSet.get("A")) && "c1".equals(testSet.get("C")));
+        }
+        Assert.assertTrue(inventory.getAllMolecules().get(((PairwiseInventory) inventory).getMoleculeIndex().ordinalOf(0, 4)).isIllegal());
+        Assert.assertEquals(0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testOnlyImpossibleMoleculesAreIllegal() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(CHAINED_SET);
+        Scenario scenario = inventory.getScenario();
+        List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+        assertNoExcludedPairs(scenario, testSets);
+
+        //Work out which pairs any test set at all can have, by going through every one of them
+        int valueCount = scenario.getParameterValuesCount();
+        boolean[][] possible = new boolean[valueCount][valueCount];
+        int[][] legalValues = scenario.getLegalValues();
+        int[] choices = new int[ legalValues.length ];
+        int[] testSet = new int[ legalValues.length ];
+        do {
+            for (int i = 0; i < testSet.length; i++) {
+                testSet[i] = legalValues[i][ choices[i] ];
+            }
+            if (!scenario.getExclusions().excludesAny(testSet)) {
+                for (int i = 0; i < testSet.length; i++) {
+                    for (int j = i + 1; j < testSet.length; j++) {
+                        possible[ testSet[i] ][ testSet[j] ] = true;
+                    }
+                }
+            }
+        } while (nextChoice(choices, legalValues));
+
+        MoleculeIndex moleculeIndex = ((PairwiseInventory) inventory).getMoleculeIndex();
+        int[] positions = scenario.getParameterPositions();
+        int impossibleCount = 0;
+        for (int a = 0; a < valueCount; a++) {
+            for (int b = a + 1; b < valueCount; b++) {
+                if (positions[a] == positions[b] || scenario.getExclusions().isExcluded(a, b)) {
+                    continue;
+                }
+                boolean covered = false;
+                for (int[] row: testSets) {
+                    covered |= row[ positions[a] ] == a && row[ positions[b] ] == b;
+                }
+                boolean illegal = inventory.getAllMolecules().get(moleculeIndex.ordinalOf(a, b)).isIllegal();
+                Assert.assertEquals("Pair [" + a + ", " + b + "] should be covered if and only if some test set can have it", possible[a][b], covered);
+                Assert.assertEquals("Pair [" + a + ", " + b + "] should be illegal if and only if no test set can have it", !possible[a][b], illegal);
+                if (!possible[a][b]) {
+                    ++impossibleCount;
+                }
+            }
+        }
+        Assert.assertEquals(42, impossibleCount);
+        Assert.assertEquals(0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testMarkIllegalIsTheSameForEveryInventory() {
+        IInventory pairwise = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET);
+        assertMarkIllegal(pairwise, ((PairwiseInventory) pairwise).getMoleculeIndex(), ((PairwiseInventory) pairwise).getUnusedParameterIndexCounts());
+        IInventory orderN = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET + "\nSize: small, large", 3);
+        assertMarkIllegal(orderN, ((OrderNInventory) orderN).getMoleculeIndex(), ((OrderNInventory) orderN).getUnusedParameterIndexCounts());
+    }
+
+    private static void assertMarkIllegal(IInventory inventory, MoleculeIndex moleculeIndex, int[] unusedCounts) {
+        int[] molecule = inventory.getBestMolecule();
+        int ordinal = moleculeIndex.ordinalOf(molecule);
+        int unusedCount = inventory.getUnusedMolecules().size();
+        int[] countsBefore = unusedCounts.clone();
+        Assert.assertFalse(inventory.getAllMolecules().get(ordinal).isIllegal());
+
+        inventory.markIllegal(molecule);
+        Assert.assertTrue(inventory.getAllMolecules().get(ordinal).isIllegal());
+        Assert.assertEquals(unusedCount - 1, inventory.getUnusedMolecules().size());
+        for (int atom: molecule) {
+            Assert.assertEquals("The unused count of atom " + atom, countsBefore[atom] - 1, unusedCounts[atom]);
+        }
+
+        //Marking it again changes nothing more
+        inventory.markIllegal(molecule);
+        Assert.assertEquals(unusedCount - 1, inventory.getUnusedMolecules().size());
+        for (int atom: molecule) {
+            Assert.assertEquals("The unused count of atom " + atom, countsBefore[atom] - 1, unusedCounts[atom]);
+        }
+    }
+
+    private static boolean nextChoice(int[] choices, int[][] legalValues) {
+        for (int i = choices.length - 1; i >= 0; i--) {
+            if (++choices[i] < legalValues[i].length) {
+                return true;
+            }
+            choices[i] = 0;
+        }
+        return false;
+    }
+
+    private static void assertNoExcludedPairs(Scenario scenario, List<int[]> testSets) {
+        Exclusions exclusions = scenario.getExclusions();
+        for (int[] testSet: testSets) {
+            for (int i = 0; i < testSet.length; i++) {
+                for (int j = i + 1; j < testSet.length; j++) {
+                    Assert.assertFalse("Test set " + Arrays.toString(testSet) + " breaks a constraint", exclusions.isExcluded(testSet[i], testSet[j]));
+                }
+            }
+        }
+    }
+
+    private static void assertAllAllowedPairsCovered(Scenario scenario, List<int[]> testSets) {
+        Exclusions exclusions = scenario.getExclusions();
+        int[] positions = scenario.getParameterPositions();
+        for (int a = 0; a < scenario.getParameterValuesCount(); a++) {
+            for (int b = a + 1; b < scenario.getParameterValuesCount(); b++) {
+                if (positions[a] == positions[b] || exclusions.isExcluded(a, b)) {
+                    continue;
+                }
+                boolean covered = false;
+                for (int[] testSet: testSets) {
+                    covered |= testSet[ positions[a] ] == a && testSet[ positions[b] ] == b;
+                }
+                Assert.assertTrue("Pair [" + a + ", " + b + "] should be covered", covered);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CoverageAnalyzerTests {
+
+    private static final String CONSTRAINED_SET =
+            "Browser: Safari, Chrome, Firefox\n" +
+            "OS: Windows, Mac, Linux\n" +
+            "Locale: en, fr\n" +
+            "Size: small, large\n" +
+            "Browser = Safari => OS = Mac\n" +
+            "OS = Linux => Locale != fr";
+
+    @Test
+    public void testGeneratedSuitesAreComplete() {
+        for (int atoms = 2; atoms <= 3; atoms++) {
+            IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET, atoms);
+            List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+
+            CoverageReport report = new CoverageAnalyzer(inventory.getScenario(), atoms).analyze(testSets);
+            Assert.assertTrue(report.isComplete());
+            Assert.assertEquals(1, report.getCoverage(), 0);
+            Assert.assertEquals(testSets.size(), report.getRowCount());
+            Assert.assertEquals(0, report.getExcludedHitCount());
+            Assert.assertTrue(report.getMissing(10).isEmpty());
+        }
+    }
+
+    @Test
+    public void testMissingAndRedundantPairs() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        List<int[]> testSets = new ArrayList<int[]>(inventory.getTestDataSet().getRawTestSets());
+        CoverageAnalyzer analyzer = new CoverageAnalyzer(inventory.getScenario());
+
+        //The last test set always covers at least one pair nothing else does
+        int[] last = testSets.remove(testSets.size() - 1);
+        testSets.add(testSets.get(0));
+        CoverageReport report = analyzer.analyze(testSets);
+        Assert.assertFalse(report.isComplete());
+        Assert.assertTrue(report.getMissingCount() > 0);
+        Assert.assertEquals(report.getCoverableCount() - report.getMissingCount(), report.getCoveredCount());
+        for (int[] missing: report.getMissing(Integer.MAX_VALUE)) {
+            Assert.assertEquals(0, report.getHitCount(missing));
+            Assert.assertTrue("The missing pairs come from the dropped test set", contains(last, missing));
+        }
+        Assert.assertEquals(1, report.getMissing(1).size());
+
+        //Every pair of the repeated test set is covered at least twice
+        int[] first = testSets.get(0);
+        Assert.assertTrue(report.getRedundantCount() >= 7 * 6 / 2);
+        Assert.assertTrue(report.getMaxHitCount() >= 2);
+        for (int i = 0; i < first.length - 1; i++) {
+            for (int j = i + 1; j < first.length; j++) {
+                Assert.assertTrue(report.getHitCount(first[i], first[j]) >= 2);
+                Assert.assertEquals(countRows(testSets, first[i], first[j]), report.getHitCount(first[i], first[j]));
+            }
+        }
+    }
+
+    @Test
+    public void testRowsBreakingConstraints() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+        List<int[]> testSets = new ArrayList<int[]>();
+        // Safari, Windows, en, small: breaks the first constraint
+        testSets.add(new int[] { 0, 3, 6, 8 });
+        // Chrome, Linux, fr, large: breaks the second
+        testSets.add(new int[] { 1, 5, 7, 9 });
+        CoverageReport report = new CoverageAnalyzer(scenario).analyze(testSets);
+        Assert.assertEquals(2, report.getExcludedHitCount());
+        Assert.assertEquals(10, report.getCoveredCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowWithValueInTheWrongPlace() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+        List<int[]> testSets = new ArrayList<int[]>();
+        testSets.add(new int[] { 3, 0, 6, 8 });
+        new CoverageAnalyzer(scenario).analyze(testSets);
+    }
+
+    @Test
+    public void testParallelCountsMatchSerialCounts() throws Exception {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET);
+        CoverageAnalyzer serial = new CoverageAnalyzer(scenario, 3);
+        CoverageAnalyzer parallel = new CoverageAnalyzer(serial.getModel());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallel.setExecutor(executor);
+            CoverageReport expected = serial.analyze(randomRows(scenario, 50000));
+            CoverageReport actual = parallel.analyze(randomRows(scenario, 50000));
+            Assert.assertFalse(executor.isShutdown());
+
+            Assert.assertEquals(50000, actual.getRowCount());
+            Assert.assertEquals(expected.getCoveredCount(), actual.getCoveredCount());
+            Assert.assertEquals(expected.getRedundantCount(), actual.getRedundantCount());
+            MoleculeIndex moleculeIndex = serial.getModel().getMoleculeIndex();
+            for (int ordinal = 0; ordinal < moleculeIndex.getMoleculeCount(); ordinal++) {
+                int[] atoms = moleculeIndex.getAtoms(ordinal);
+                Assert.assertEquals(expected.getHitCount(atoms), actual.getHitCount(atoms));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Streams random rows, handing out the same array every time
+     */
+    private static Iterator<int[]> randomRows(final Scenario scenario, final int rowCount) {
+        final Random random = new Random(7);
+        final int[] row = new int[ scenario.getParameterSetCount() ];
+        return new Iterator<int[]>() {
+            private int rowsLeft = rowCount;
+
+            @Override
+            public boolean hasNext() { return rowsLeft > 0; }
+
+            @Override
+            public int[] next() {
+                --rowsLeft;
+                for (int j = 0; j < row.length; j++) {
+                    int[] values = scenario.getLegalValues()[j];
+                    row[j] = values[ random.nextInt(values.length) ];
+                }
+                return row;
+            }
+
+            @Override
+            public void remove() { throw new UnsupportedOperationException(); }
+        };
+    }
+
+    private static boolean contains(int[] testSet, int[] atoms) {
+        for (int atom: atoms) {
+            boolean found = false;
+            for (int value: testSet) {
+                found |= value == atom;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countRows(List<int[]> testSets, int firstAtom, int secondAtom) {
+        int count = 0;
+        for (int[] testSet: testSets) {
+            if (contains(testSet, new int[] { firstAtom, secondAtom })) {
+                ++count;
+            }
+        }
+        return count;
+    }
+}
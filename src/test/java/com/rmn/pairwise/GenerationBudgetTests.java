@@ -0,0 +1,137 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GenerationBudgetTests {
+
+    @Test
+    public void testUnlimitedBudgetCoversEverything() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        int moleculeCount = inventory.getUnusedMolecules().size();
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        dataSet.setPrioritizing(true);
+        GenerationResult result = dataSet.buildTestCases(GenerationBudget.unlimited());
+
+        Assert.assertEquals(GenerationResult.StopReason.COVERED, result.getStopReason());
+        Assert.assertFalse(result.isPartial());
+        Assert.assertEquals(1.0, result.getCoverage(), 0);
+        Assert.assertEquals(moleculeCount, result.getStartingUnusedCount());
+        Assert.assertEquals(dataSet.getRawTestSets().size(), result.getTestSets().size());
+        assertPrioritized(result);
+
+        int total = 0;
+        for (int newMolecules: result.getNewMoleculeCounts()) {
+            total += newMolecules;
+        }
+        Assert.assertEquals(moleculeCount, total);
+    }
+
+    @Test
+    public void testRowsStayInGenerationOrder() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        int moleculeCount = inventory.getUnusedMolecules().size();
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        final List<int[]> seen = new ArrayList<int[]>();
+        dataSet.addListener(new GenerationListener() {
+            @Override
+            public void generationStarted(int unusedMoleculeCount, long coverageBytes) { }
+
+            @Override
+            public void testSetAdded(int[] testSet, RowMetrics row) {
+                Assert.assertEquals(seen.size(), row.getRow());
+                seen.add(testSet.clone());
+            }
+
+            @Override
+            public void moleculeIllegal(int[] molecule, int unusedMoleculeCount) { }
+
+            @Override
+            public void generationFinished(int rowCount, long nanos) { }
+        });
+        GenerationResult result = dataSet.buildTestCases(GenerationBudget.unlimited());
+
+        Assert.assertEquals(seen.size(), dataSet.getRawTestSets().size());
+        Assert.assertEquals(seen.size(), result.getTestSets().size());
+        int total = 0;
+        for (int row = 0; row < seen.size(); row++) {
+            Assert.assertArrayEquals("Row " + row, seen.get(row), dataSet.getRawTestSets().get(row));
+            Assert.assertArrayEquals("Row " + row, seen.get(row), result.getTestSets().get(row));
+            total += result.getNewMoleculeCounts()[row];
+        }
+        Assert.assertEquals(moleculeCount, total);
+        Assert.assertEquals(1.0, result.getCoverage(), 0);
+    }
+
+    @Test
+    public void testRowLimit() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        GenerationResult result = dataSet.buildTestCases(GenerationBudget.unlimited().withMaxRows(3));
+
+        Assert.assertEquals(GenerationResult.StopReason.ROW_LIMIT, result.getStopReason());
+        Assert.assertTrue(result.isPartial());
+        Assert.assertEquals(3, result.getTestSets().size());
+        Assert.assertEquals(3, dataSet.getRawTestSets().size());
+        Assert.assertTrue(result.getCoverage() < 1);
+        Assert.assertEquals(result.getCoverage(), result.getCoverage(2), 0);
+        assertPrioritized(result);
+    }
+
+    @Test
+    public void testCoverageTarget() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        GenerationResult result = dataSet.buildTestCases(GenerationBudget.unlimited().withTargetCoverage(0.9));
+
+        Assert.assertEquals(GenerationResult.StopReason.COVERAGE_TARGET, result.getStopReason());
+        Assert.assertTrue(result.getCoverage() >= 0.9);
+        int fullSize = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET).getTestDataSet().getRawTestSets().size();
+        Assert.assertTrue("The last 10% of the pairs should take more test sets", result.getTestSets().size() < fullSize);
+    }
+
+    @Test
+    public void testTimeLimit() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        GenerationResult result = dataSet.buildTestCases(GenerationBudget.unlimited().withMaxMillis(0));
+
+        Assert.assertEquals(GenerationResult.StopReason.TIME_LIMIT, result.getStopReason());
+        Assert.assertEquals(0, result.getTestSets().size());
+        Assert.assertEquals(0, result.getCoverage(), 0);
+
+        //Nothing was used up, so carrying on covers everything
+        Assert.assertFalse(dataSet.buildTestCases(GenerationBudget.unlimited()).isPartial());
+    }
+
+    @Test
+    public void testPrioritizerPutsTheBiggestTestSetFirst() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario("A: a1, a2\nB: b1, b2\nC: c1, c2");
+        int[] small = { 0, 2, 4 };        // [a1, b1, c1]
+        int[] repeat = { 0, 2, 5 };       // [a1, b1, c2]: [a1, b1] is covered by small
+        int[] fresh = { 1, 3, 5 };        // [a2, b2, c2]
+        int[] newMoleculeCounts = new int[3];
+        List<int[]> prioritized = new TestSetPrioritizer(scenario, 2).prioritize(Arrays.asList(small, repeat, fresh), newMoleculeCounts);
+
+        Assert.assertSame(small, prioritized.get(0));
+        Assert.assertSame(fresh, prioritized.get(1));
+        Assert.assertSame(repeat, prioritized.get(2));
+        Assert.assertArrayEquals(new int[] { 3, 3, 2 }, newMoleculeCounts);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTargetCoverageOutOfRange() {
+        GenerationBudget.unlimited().withTargetCoverage(1.5);
+    }
+
+    private static void assertPrioritized(GenerationResult result) {
+        int[] newMoleculeCounts = result.getNewMoleculeCounts();
+        for (int row = 1; row < newMoleculeCounts.length; row++) {
+            Assert.assertTrue("Test set " + row + " covers more than the one before it", newMoleculeCounts[row] <= newMoleculeCounts[row - 1]);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class GenerationCacheTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PARAMETER_SET =
+            "Browser: Chrome, Firefox, IE, Safari\n" +
+            "Page Type: Home, Store, Landing, Search Results\n" +
+            "Login Type: Organic, Direct, EmailGenerated\n" +
+            "User Type: Administrator, User, Operations";
+
+    @Test
+    public void testKeyDependsOnEverythingThatChangesTheSuite() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(PARAMETER_SET);
+        String key = GenerationCache.keyOf(scenario, "pairs", 2, 2, 1);
+
+        Assert.assertEquals("The same scenario and settings should give the same key",
+                key, GenerationCache.keyOf(PairwiseInventoryFactory.generateScenario(PARAMETER_SET), "pairs", 2, 2, 1));
+        Assert.assertFalse(key.equals(GenerationCache.keyOf(scenario, "pairs", 3, 2, 1)));
+        Assert.assertFalse(key.equals(GenerationCache.keyOf(scenario, "pairs", 2, 3, 1)));
+        Assert.assertFalse(key.equals(GenerationCache.keyOf(scenario, "pairs", 2, 2, 4)));
+        Assert.assertFalse(key.equals(GenerationCache.keyOf(scenario, "triples", 2, 2, 1)));
+
+        Scenario reordered = PairwiseInventoryFactory.generateScenario(PARAMETER_SET.replace("Chrome, Firefox", "Firefox, Chrome"));
+        Assert.assertFalse("Values in a different order should give a different key", key.equals(GenerationCache.keyOf(reordered, "pairs", 2, 2, 1)));
+
+        Scenario constrained = PairwiseInventoryFactory.generateScenario(PARAMETER_SET + "\nBrowser = IE => User Type != Operations");
+        Assert.assertFalse("Constraints should change the key", key.equals(GenerationCache.keyOf(constrained, "pairs", 2, 2, 1)));
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        GenerationCache cache = new GenerationCache(folder.newFolder("cache"), 1 << 20);
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET);
+        List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+
+        Assert.assertNull(cache.load("key", inventory.getScenario()));
+        cache.store("key", inventory.getScenario(), testSets);
+        List<int[]> loaded = cache.load("key", inventory.getScenario());
+        Assert.assertEquals(testSets.size(), loaded.size());
+        for (int i = 0; i < testSets.size(); i++) {
+            Assert.assertArrayEquals(testSets.get(i), loaded.get(i));
+        }
+        Assert.assertEquals("Each value should take up a single byte", 17 + testSets.size() * 4, cache.fileFor("key").length());
+    }
+
+    @Test
+    public void testCorruptEntryIsDiscarded() throws IOException {
+        GenerationCache cache = new GenerationCache(folder.newFolder("cache"), 1 << 20);
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(PARAMETER_SET);
+        FileOutputStream out = new FileOutputStream(cache.fileFor("key"));
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        Assert.assertNull(cache.load("key", scenario));
+        Assert.assertFalse(cache.fileFor("key").exists());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(PARAMETER_SET);
+        List<int[]> testSets = Arrays.asList(new int[] { 0, 4, 8, 11 }, new int[] { 1, 5, 9, 12 });
+        long entryBytes = 17 + 2 * 4;
+        GenerationCache cache = new GenerationCache(folder.newFolder("cache"), 2 * entryBytes);
+
+        cache.store("first", scenario, testSets);
+        cache.store("second", scenario, testSets);
+        cache.fileFor("first").setLastModified(1000000000000L);
+        cache.fileFor("second").setLastModified(1000000001000L);
+        cache.store("third", scenario, testSets);
+
+        Assert.assertFalse("The oldest entry should have been evicted", cache.fileFor("first").exists());
+        Assert.assertTrue(cache.fileFor("second").exists());
+        Assert.assertTrue(cache.fileFor("third").exists());
+    }
+
+    @Test
+    public void testCachedGenerationSkipsTheAlgorithm() throws IOException {
+        File directory = folder.newFolder("cache");
+        List<int[]> expected = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET).getTestDataSet().getRawTestSets();
+
+        CachingInventory first = (CachingInventory) PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, new GenerationCache(directory, 1 << 20));
+        List<int[]> generated = first.getTestDataSet().getRawTestSets();
+        Assert.assertTrue("A miss has to generate the suite", first.isBuilt());
+
+        CachingInventory second = (CachingInventory) PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, new GenerationCache(directory, 1 << 20));
+        TestDataSet cached = second.getTestDataSet();
+        Assert.assertFalse("A hit shouldn't build any molecules", second.isBuilt());
+
+        Assert.assertEquals(expected.size(), generated.size());
+        Assert.assertEquals(expected.size(), cached.getRawTestSets().size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i), generated.get(i));
+            Assert.assertArrayEquals(expected.get(i), cached.getRawTestSets().get(i));
+        }
+        Assert.assertEquals("Chrome", cached.getTestSets().get(0).get("Browser"));
+    }
+
+    @Test
+    public void testCacheHitLeavesNothingUnused() throws IOException {
+        File directory = folder.newFolder("cache");
+        CachingInventory first = (CachingInventory) PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, new GenerationCache(directory, 1 << 20));
+        first.getTestDataSet();
+        Assert.assertTrue(first.getUnusedMolecules().isEmpty());
+
+        CachingInventory second = (CachingInventory) PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, new GenerationCache(directory, 1 << 20));
+        second.getTestDataSet();
+        Assert.assertFalse(second.isBuilt());
+        Assert.assertTrue("A hit should answer the same way a miss does", second.getUnusedMolecules().isEmpty());
+        Assert.assertArrayEquals(((PairwiseInventory) first.getInventory()).getUnusedParameterIndexCounts(),
+                ((PairwiseInventory) second.getInventory()).getUnusedParameterIndexCounts());
+    }
+}
@@ -3,8 +3,12 @@ package com.rmn.pairwise;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Arrays;
 
 public class InventoryFactoryTests {
     static final String TWO_X_THREE_SET = "Param0: x, y\nParam1: i, j, k";
@@ -65,4 +69,50 @@ public class InventoryFactoryTests {
         Assert.assertEquals(3, scenario.getScenario().getLegalValues()[1].length);
         Assert.assertEquals("j", scenario.getScenario().getParameterSet(1).getValue(1));
     }
+
+    @Test
+    public void testAnyLineEnding() throws IOException {
+        for (String ending: Arrays.asList("\n", "\r\n", "\r")) {
+            Scenario scenario = PairwiseInventoryFactory.generateScenario(new StringReader(
+                    "Param0: a, b" + ending + ending + "Param1: c, d, e" + ending + "   " + ending + "Param0 = a => Param1 != e" + ending));
+            Assert.assertEquals(2, scenario.getParameterSetCount());
+            Assert.assertEquals(5, scenario.getParameterValuesCount());
+            Assert.assertEquals("e", scenario.getParameterSet(1).getValue(2));
+            Assert.assertEquals(1, scenario.getConstraints().size());
+        }
+    }
+
+    @Test
+    public void testChannelParsing() throws IOException {
+        byte[] contents = "Param0: \u00e9t\u00e9, hiver\nParam1: c, d".getBytes("UTF-8");
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(Channels.newChannel(new ByteArrayInputStream(contents)));
+        Assert.assertEquals("\u00e9t\u00e9", scenario.getParameterSet(0).getValue(0));
+        Assert.assertEquals(4, scenario.getParameterValuesCount());
+    }
+
+    @Test
+    public void testTrailingCommasAreDropped() {
+        Assert.assertEquals(Arrays.asList("a", "b"), PairwiseInventoryFactory.processOneLine("Param0: a, b,,").getParameterValues());
+        Assert.assertEquals(Arrays.asList("a", "", "b"), PairwiseInventoryFactory.processOneLine("Param0: a, , b").getParameterValues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLineWithoutColon() {
+        PairwiseInventoryFactory.generateScenario("Param0 a, b");
+    }
+
+    @Test
+    public void testLargeScenario() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            contents.append("Param").append(i).append(": a").append(i).append(", b").append(i).append(", c").append(i).append("\r\n");
+        }
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(new StringReader(contents.toString()));
+
+        Assert.assertEquals(5000, scenario.getParameterSetCount());
+        Assert.assertEquals(15000, scenario.getParameterValuesCount());
+        Assert.assertArrayEquals(new int[] { 14997, 14998, 14999 }, scenario.getLegalValues()[4999]);
+        Assert.assertEquals(4999, scenario.getParameterPositions()[14999]);
+        Assert.assertEquals("c4999", scenario.getParameterValues().get(14999));
+    }
 }
@@ -0,0 +1,76 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoleculeQueueTests {
+
+    private static class ArrayWeigher implements MoleculeQueue.Weigher {
+        private final int[] weights;
+        ArrayWeigher(int... weights) { this.weights = weights; }
+
+        @Override
+        public int weightOf(int ordinal) { return weights[ordinal]; }
+    }
+
+    @Test
+    public void testHighestWeightWins() {
+        MoleculeQueue queue = new MoleculeQueue(4, new ArrayWeigher(1, 5, 3, 2));
+        Assert.assertEquals(1, queue.peekBest());
+    }
+
+    @Test
+    public void testTiesGoToTheLowestOrdinal() {
+        MoleculeQueue queue = new MoleculeQueue(5, new ArrayWeigher(1, 4, 2, 4, 4));
+        Assert.assertEquals(1, queue.peekBest());
+        Assert.assertEquals("Peeking should leave the molecule in the queue", 1, queue.peekBest());
+    }
+
+    @Test
+    public void testWeightsCanDropWithoutTellingTheQueue() {
+        ArrayWeigher weigher = new ArrayWeigher(3, 6, 5, 1);
+        MoleculeQueue queue = new MoleculeQueue(4, weigher);
+        Assert.assertEquals(1, queue.peekBest());
+
+        weigher.weights[1] = 2;
+        Assert.assertEquals(2, queue.peekBest());
+
+        weigher.weights[2] = 3;
+        Assert.assertEquals("Molecule 0 now ties with 2, and has the lower ordinal", 0, queue.peekBest());
+    }
+
+    @Test
+    public void testUsedMoleculesAreDropped() {
+        ArrayWeigher weigher = new ArrayWeigher(2, 7, 0);
+        MoleculeQueue queue = new MoleculeQueue(3, weigher);
+
+        weigher.weights[1] = -1;
+        Assert.assertEquals(0, queue.peekBest());
+
+        weigher.weights[0] = -1;
+        weigher.weights[2] = -1;
+        Assert.assertEquals("There should be nothing left", -1, queue.peekBest());
+    }
+
+    @Test
+    public void testBestMoleculeMatchesFullScan() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        int[] counts = ((PairwiseInventory) inventory).getUnusedParameterIndexCounts();
+        while (!inventory.getUnusedMolecules().isEmpty()) {
+            int bestWeight = 0;
+            Molecule expected = null;
+            for (Molecule molecule: inventory.getAllMolecules()) {
+                int weight = counts[ molecule.getAtoms()[0] ] + counts[ molecule.getAtoms()[1] ];
+                if (inventory.isUnusedMolecule(molecule.getAtoms()[0], molecule.getAtoms()[1]) && (expected == null || weight > bestWeight)) {
+                    bestWeight = Math.max(weight, 0);
+                    expected = molecule;
+                }
+            }
+            int[] best = inventory.getBestMolecule();
+            Assert.assertArrayEquals(expected.getAtoms(), best);
+
+            TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+            inventory.updateAllCounts(dataSet.getSingleTestSet());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class OrderNInventoryTests {
+
+    private static final String PARAMETER_SET =
+            "Param0: a, b\n" +
+            "Param1: c, d, e\n" +
+            "Param2: f, g\n" +
+            "Param3: h, i, j, k\n" +
+            "Param4: l, m";
+
+    @Test
+    public void testIndexRoundTrip() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET);
+        for (int atomsPerMolecule = 2; atomsPerMolecule <= 4; atomsPerMolecule++) {
+            MoleculeIndex index = new MoleculeIndex(scenario, atomsPerMolecule);
+            int[] atoms = new int[atomsPerMolecule];
+            for (int ordinal = 0; ordinal < index.getMoleculeCount(); ordinal++) {
+                index.atomsOf(ordinal, atoms);
+                Assert.assertEquals(ordinal, index.ordinalOf(atoms));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexFollowsBuildOrder() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(PARAMETER_SET);
+        MoleculeIndex index = new MoleculeIndex(scenario, 3);
+
+        Assert.assertArrayEquals("The first triple should be [a, c, f]", new int[] { 0, 2, 5 }, index.getAtoms(0));
+        Assert.assertArrayEquals("The second triple should be [a, c, g]", new int[] { 0, 2, 6 }, index.getAtoms(1));
+        Assert.assertArrayEquals("The first triple of the second block should be [a, c, h]", new int[] { 0, 2, 7 }, index.getAtoms(12));
+        Assert.assertArrayEquals("The last triple should be [g, k, m]", new int[] { 6, 10, 12 }, index.getAtoms(index.getMoleculeCount() - 1));
+    }
+
+    @Test
+    public void testIndexWalksAnyRange() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET);
+        for (int atomsPerMolecule = 2; atomsPerMolecule <= 4; atomsPerMolecule++) {
+            final MoleculeIndex index = new MoleculeIndex(scenario, atomsPerMolecule);
+            int moleculeCount = index.getMoleculeCount();
+            for (int from: new int[] { 0, 1, 17, moleculeCount / 3, moleculeCount - 1 }) {
+                final int[] next = { from };
+                int to = Math.min(from + 500, moleculeCount);
+                index.forEachMolecule(from, to, new MoleculeIndex.Visitor() {
+                    @Override
+                    public void visit(int ordinal, int[] atoms) {
+                        Assert.assertEquals(next[0]++, ordinal);
+                        Assert.assertArrayEquals(index.getAtoms(ordinal), atoms);
+                    }
+                });
+                Assert.assertEquals(to, next[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testMoleculeCount() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, 3);
+        // 2*3*2 + 2*3*4 + 2*3*2 + 2*2*4 + 2*2*2 + 2*4*2 + 3*2*4 + 3*2*2 + 3*4*2 + 2*4*2
+        Assert.assertEquals(164, inventory.getMoleculeCount());
+        Assert.assertEquals(164, inventory.initMoleculeCount());
+        Assert.assertEquals(164, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testAllTriplesAreCovered() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET, 3);
+        List<int[]> testSets = inventory.getTestDataSet().getRawTestSets();
+
+        Set<Molecule> covered = new HashSet<Molecule>();
+        for (int[] testSet: testSets) {
+            for (int i = 0; i < testSet.length; i++) {
+                for (int j = i + 1; j < testSet.length; j++) {
+                    for (int k = j + 1; k < testSet.length; k++) {
+                        covered.add(new Molecule(new int[] { testSet[i], testSet[j], testSet[k] }));
+                    }
+                }
+            }
+        }
+        Assert.assertTrue("Every triple should be covered", covered.containsAll(inventory.getAllMolecules()));
+        Assert.assertTrue("There can't be fewer test sets than the largest 3 parameter sets multiplied", testSets.size() >= 4 * 3 * 2);
+        Assert.assertTrue("There should be fewer test sets than the full combination count", testSets.size() < inventory.getFullCombinationCount());
+    }
+
+    @Test
+    public void testTooFewParameterSets() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.TWO_X_THREE_SET, 3);
+        Assert.assertEquals("With only two parameter sets, the molecules can only be pairs", 2, inventory.getAtomsPerMolecule());
+        Assert.assertEquals(6, inventory.getTestDataSet().getRawTestSets().size());
+    }
+}
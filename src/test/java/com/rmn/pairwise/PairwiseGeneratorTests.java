@@ -0,0 +1,134 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PairwiseGeneratorTests {
+
+    private static final String CONSTRAINED_SET =
+            "Browser: Safari, Chrome, Firefox\n" +
+            "OS: Windows, Mac, Linux\n" +
+            "Locale: en, fr\n" +
+            "Browser = Safari => OS = Mac\n" +
+            "OS = Linux => Locale != fr";
+
+    private static final String IMPOSSIBLE_PAIR_SET =
+            "A: a1, a2\n" +
+            "B: b1, b2\n" +
+            "C: c1, c2\n" +
+            "A = a1 => B = b1\n" +
+            "C = c1 => B = b2";
+
+    @Test
+    public void testPairsMatchPairwiseInventory() {
+        for (String parameterSet: new String[] { InventoryFactoryTests.BIG_PARAMETER_SET, CONSTRAINED_SET, IMPOSSIBLE_PAIR_SET }) {
+            List<int[]> expected = PairwiseInventoryFactory.generateParameterInventory(parameterSet).getTestDataSet().getRawTestSets();
+            PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(PairwiseInventoryFactory.generateScenario(parameterSet)));
+            assertSameTestSets(expected, generator.generate());
+        }
+    }
+
+    @Test
+    public void testTriplesMatchOrderNInventory() {
+        for (String parameterSet: new String[] { InventoryFactoryTests.BIG_PARAMETER_SET, CONSTRAINED_SET }) {
+            List<int[]> expected = PairwiseInventoryFactory.generateParameterInventory(parameterSet, 3).getTestDataSet().getRawTestSets();
+            PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(PairwiseInventoryFactory.generateScenario(parameterSet), 3));
+            assertSameTestSets(expected, generator.generate());
+        }
+    }
+
+    @Test
+    public void testSeedAndPoolSizeMatchTestDataSet() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.BIG_PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        dataSet.setSeed(42);
+        dataSet.setCandidatePoolSize(5);
+        dataSet.buildTestCases();
+
+        PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(inventory.getScenario()));
+        assertSameTestSets(dataSet.getRawTestSets(), generator.generate(42, 5));
+    }
+
+    @Test
+    public void testPooledStateIsReset() {
+        for (int atoms = 2; atoms <= 3; atoms++) {
+            PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET), atoms), 1);
+            List<int[]> first = generator.generate();
+            Assert.assertEquals(1, generator.getPooledCount());
+            generator.generate(7, 3);
+            Assert.assertEquals(1, generator.getPooledCount());
+            assertSameTestSets(first, generator.generate());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOnlyModelInventoriesReset() {
+        PairwiseInventory inventory = (PairwiseInventory) PairwiseInventoryFactory.generateParameterInventory(CONSTRAINED_SET);
+        inventory.reset();
+    }
+
+    @Test
+    public void testCompilingFreezesTheScenario() {
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+        CompiledModel model = new CompiledModel(scenario);
+        Assert.assertTrue(scenario.isFrozen());
+        // 9 + 6 + 6 pairs, less [Safari, Windows], [Safari, Linux] and [Linux, fr]
+        Assert.assertEquals(18, model.getCoverableMoleculeCount());
+    }
+
+    @Test
+    public void testConcurrentCallsShareTheModel() throws Exception {
+        final PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET)), 2);
+        final List<int[]> expected = generator.generate();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<int[]>>> results = new ArrayList<Future<List<int[]>>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<List<int[]>>() {
+                    @Override
+                    public List<int[]> call() {
+                        return generator.generate();
+                    }
+                }));
+            }
+            for (Future<List<int[]>> result: results) {
+                assertSameTestSets(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue("The pool should never keep more than its limit", generator.getPooledCount() <= 2);
+    }
+
+    @Test
+    public void testMultiStartPicksTheSmallestSuite() {
+        PairwiseGenerator generator = new PairwiseGenerator(new CompiledModel(PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET)));
+        MultiStartResult result = generator.generateSmallest(8, 1);
+
+        long[] seeds = result.getSeeds();
+        int[] suiteSizes = result.getSuiteSizes();
+        Assert.assertEquals(8, seeds.length);
+        Assert.assertEquals(TestDataSet.DEFAULT_SEED, seeds[0]);
+        Assert.assertEquals("The default seed is one of the starts", generator.generate().size(), suiteSizes[0]);
+        for (int i = 0; i < seeds.length; i++) {
+            Assert.assertEquals(generator.generate(seeds[i], 1).size(), suiteSizes[i]);
+            Assert.assertTrue(result.getTestSets().size() <= suiteSizes[i]);
+        }
+        assertSameTestSets(generator.generate(result.getSeed(), 1), result.getTestSets());
+    }
+
+    private static void assertSameTestSets(List<int[]> expected, List<int[]> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals("Test set " + i, expected.get(i), actual.get(i));
+        }
+    }
+}
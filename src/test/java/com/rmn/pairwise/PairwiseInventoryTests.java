@@ -4,6 +4,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class PairwiseInventoryTests {
 
     @Test
@@ -99,4 +102,122 @@ public class PairwiseInventoryTests {
 
         Assert.assertEquals("The pair count should be 6", 6, inventory.getMoleculeCount());
     }
+
+    @Test
+    public void testIsUnusedMolecule() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.PARAMETER_SET);
+        Assert.assertTrue("[a, c] should start out unused", inventory.isUnusedMolecule(0, 2));
+        Assert.assertTrue("The order of the atoms shouldn't matter", inventory.isUnusedMolecule(2, 0));
+        Assert.assertFalse("[a, b] come from the same parameter set, so they're never a molecule", inventory.isUnusedMolecule(0, 1));
+
+        inventory.updateAllCounts(new int[] { 0, 2, 6, 9 });
+        Assert.assertFalse("[a, c] was used by the test set", inventory.isUnusedMolecule(0, 2));
+        Assert.assertFalse("[g, j] was used by the test set", inventory.isUnusedMolecule(9, 6));
+        Assert.assertTrue("[b, c] was not part of the test set", inventory.isUnusedMolecule(1, 2));
+        Assert.assertEquals(44 - 6, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerialBuild() throws Exception {
+        //40 parameter sets of 12 values is 780 blocks of 144 pairs, so the molecules get split up across a couple of tasks
+        StringBuilder parameterSet = new StringBuilder();
+        for (int set = 0; set < 40; set++) {
+            parameterSet.append("Param").append(set).append(":");
+            for (int value = 0; value < 12; value++) {
+                parameterSet.append(value == 0 ? " " : ", ").append("v").append(set).append("_").append(value);
+            }
+            parameterSet.append("\n");
+        }
+        parameterSet.append("Param0 = v0_0 => Param7 = v7_3\nParam21 = v21_5 => Param39 != v39_1, v39_2\n");
+        PairwiseInventory serial = new PairwiseInventory();
+        serial.setScenario(PairwiseInventoryFactory.generateScenario(parameterSet.toString()));
+        serial.buildMolecules();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PairwiseInventory parallel = new PairwiseInventory();
+            parallel.setScenario(serial.getScenario());
+            parallel.setExecutor(executor);
+            parallel.buildMolecules();
+
+            Assert.assertEquals(112320, parallel.getMoleculeCount());
+            Assert.assertEquals(112320 - 11 - 2, parallel.getUnusedMolecules().size());
+            Assert.assertArrayEquals(serial.getUnusedParameterIndexCounts(), parallel.getUnusedParameterIndexCounts());
+            for (int ordinal = 0; ordinal < parallel.getMoleculeCount(); ordinal++) {
+                Assert.assertEquals(serial.getCoverageMatrix().isUnused(ordinal), parallel.getCoverageMatrix().isUnused(ordinal));
+            }
+            Assert.assertEquals(serial.getAllMolecules(), parallel.getAllMolecules());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMoleculesAreMadeOnDemand() {
+        PairwiseInventory inventory = (PairwiseInventory) PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.PARAMETER_SET);
+        Molecule first = inventory.getAllMolecules().get(0);
+        Assert.assertNotSame(first, inventory.getAllMolecules().get(0));
+        Assert.assertEquals(first, inventory.getAllMolecules().get(0));
+
+        //The view reflects the inventory, not the other way around
+        first.setIllegal(true);
+        Assert.assertFalse(inventory.getAllMolecules().get(0).isIllegal());
+        inventory.markIllegal(first.getAtoms());
+        Assert.assertTrue(inventory.getAllMolecules().get(0).isIllegal());
+        Assert.assertFalse(inventory.getUnusedMolecules().contains(first));
+    }
+
+    @Test
+    public void testBitsetInventoryMatchesPairwiseInventory() {
+        String constrainedSet = InventoryFactoryTests.BIG_PARAMETER_SET + "Param0 = a => Param3 = j\nParam3 = n => Param5 != q";
+        for (String parameterSet: new String[] { InventoryFactoryTests.PARAMETER_SET, InventoryFactoryTests.BIG_PARAMETER_SET, constrainedSet }) {
+            for (int poolSize: new int[] { 1, 5 }) {
+                IInventory expected = PairwiseInventoryFactory.generateParameterInventory(parameterSet);
+                TestDataSet expectedDataSet = new TestDataSet(expected, expected.getScenario());
+                expectedDataSet.setCandidatePoolSize(poolSize);
+                expectedDataSet.buildTestCases();
+
+                IInventory bitset = new BitsetPairwiseInventory();
+                bitset.setScenario(PairwiseInventoryFactory.generateScenario(parameterSet));
+                bitset.buildMolecules();
+                TestDataSet bitsetDataSet = new TestDataSet(bitset, bitset.getScenario());
+                bitsetDataSet.setCandidatePoolSize(poolSize);
+                bitsetDataSet.buildTestCases();
+
+                Assert.assertEquals(expectedDataSet.getRawTestSets().size(), bitsetDataSet.getRawTestSets().size());
+                for (int i = 0; i < expectedDataSet.getRawTestSets().size(); i++) {
+                    Assert.assertArrayEquals("Test set " + i, expectedDataSet.getRawTestSets().get(i), bitsetDataSet.getRawTestSets().get(i));
+                }
+                Assert.assertEquals(0, bitset.getUnusedMolecules().size());
+            }
+        }
+    }
+
+    @Test
+    public void testUnusedPartnersFollowCoverage() {
+        BitsetPairwiseInventory inventory = new BitsetPairwiseInventory();
+        inventory.setScenario(PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.PARAMETER_SET + "\nParam0 = b => Param2 = g"));
+        inventory.buildMolecules();
+        inventory.updateAllCounts(new int[] { 0, 2, 6, 9 });
+        inventory.markIllegal(new int[] { 1, 6 });
+
+        Scenario scenario = inventory.getScenario();
+        for (int value = 0; value < scenario.getParameterValuesCount(); value++) {
+            long[] partners = inventory.getUnusedPartners(value);
+            for (int other = 0; other < scenario.getParameterValuesCount(); other++) {
+                boolean unused = scenario.getParameterPositions()[value] != scenario.getParameterPositions()[other] && inventory.isUnusedMolecule(value, other);
+                Assert.assertEquals("Values " + value + " and " + other, unused, (partners[other >>> 6] & (1L << other)) != 0);
+            }
+        }
+        Assert.assertEquals(inventory.numberMoleculesCaptured(3, new int[] { 0, 2, 6, 9 }, new int[] { 0, 2, 3, 1 }, 3),
+                inventory.numberMoleculesCaptured(3, maskOf(scenario, 0, 6, 9)));
+    }
+
+    private static long[] maskOf(Scenario scenario, int... values) {
+        long[] mask = scenario.getExclusions().newValueMask();
+        for (int value: values) {
+            Exclusions.addToMask(mask, value);
+        }
+        return mask;
+    }
 }
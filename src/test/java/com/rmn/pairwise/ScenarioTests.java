@@ -4,6 +4,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ScenarioTests {
 
@@ -54,4 +59,74 @@ public class ScenarioTests {
         
         Assert.assertEquals("e", scenario.getParameterValues().get(scenario.getLegalValues()[1][1]));
     }
+
+    @Test
+    public void testBuilderMatchesAddingOneAtATime() {
+        Scenario scenario = getDefaultScenario();
+        scenario.addParameterSet(new ParameterSet<String>(Arrays.asList("d", "e", "f", "g")));
+
+        Scenario built = new Scenario.Builder()
+                .addParameterSet(new ParameterSet<String>(Arrays.asList("a", "b", "c")))
+                .addParameterSet("Second", Arrays.asList("d", "e", "f", "g"))
+                .build();
+
+        Assert.assertTrue(built.isFrozen());
+        Assert.assertFalse(scenario.isFrozen());
+        Assert.assertArrayEquals(scenario.getParameterPositions(), built.getParameterPositions());
+        Assert.assertArrayEquals(scenario.getValueOffsets(), built.getValueOffsets());
+        Assert.assertEquals(scenario.getParameterValues(), built.getParameterValues());
+        Assert.assertEquals(scenario.getLegalValues().length, built.getLegalValues().length);
+        for (int i = 0; i < scenario.getLegalValues().length; i++) {
+            Assert.assertArrayEquals(scenario.getLegalValues()[i], built.getLegalValues()[i]);
+        }
+        Assert.assertEquals("Second", built.getParameterSet(1).getName());
+    }
+
+    @Test
+    public void testValueOffsets() {
+        Scenario scenario = getDefaultScenario();
+        scenario.addParameterSet(new ParameterSet<String>(Arrays.asList("d", "e", "f", "g")));
+        Assert.assertArrayEquals(new int[] { 0, 3, 7 }, scenario.getValueOffsets());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozenScenarioCantGetParameterSets() {
+        Scenario scenario = getDefaultScenario().freeze();
+        scenario.addParameterSet(new ParameterSet<String>(Arrays.asList("d", "e")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFrozenScenarioListsAreReadOnly() {
+        PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.PARAMETER_SET).getParameterSets().clear();
+    }
+
+    @Test
+    public void testFrozenScenarioIsShareable() throws Exception {
+        final Scenario scenario = PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET);
+        Assert.assertTrue(scenario.isFrozen());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<List<int[]>> generate = new Callable<List<int[]>>() {
+                @Override
+                public List<int[]> call() {
+                    IInventory inventory = new PairwiseInventory();
+                    inventory.setScenario(scenario);
+                    inventory.buildMolecules();
+                    return inventory.getTestDataSet().getRawTestSets();
+                }
+            };
+            List<Future<List<int[]>>> results = executor.invokeAll(Arrays.asList(generate, generate, generate, generate));
+            List<int[]> expected = results.get(0).get();
+            for (Future<List<int[]>> result: results) {
+                List<int[]> testSets = result.get();
+                Assert.assertEquals(expected.size(), testSets.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertArrayEquals(expected.get(i), testSets.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
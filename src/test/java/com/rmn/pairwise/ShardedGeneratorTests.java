@@ -0,0 +1,111 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ShardedGeneratorTests {
+
+    private static final String CONSTRAINED_SET =
+            InventoryFactoryTests.BIG_PARAMETER_SET +
+            "Param0 = a => Param3 = j\n" +
+            "Param3 = n => Param5 != q\n" +
+            "Param1 = c => Param2 != g";
+
+    @Test
+    public void testConstrainedParameterSetsShareAShard() {
+        ShardedGenerator generator = new ShardedGenerator(PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET), 3);
+        int[][] shards = generator.partition();
+        Assert.assertEquals(3, shards.length);
+        // {0, 3, 5} have 10 values, {1, 2} and {6} have 7 each, and {4} goes in with the first of the two smallest
+        Assert.assertArrayEquals(new int[] { 0, 3, 5 }, shards[0]);
+        Assert.assertArrayEquals(new int[] { 1, 2, 4 }, shards[1]);
+        Assert.assertArrayEquals(new int[] { 6 }, shards[2]);
+
+        Assert.assertEquals("There are never more shards than groups", 4,
+                new ShardedGenerator(PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET), 16).partition().length);
+    }
+
+    @Test
+    public void testEveryAllowedPairIsCovered() {
+        for (int shardCount = 1; shardCount <= 4; shardCount++) {
+            Scenario scenario = PairwiseInventoryFactory.generateScenario(CONSTRAINED_SET);
+            List<int[]> testSets = new ShardedGenerator(scenario, shardCount).generate();
+
+            assertNoExcludedPairs(scenario, testSets);
+            assertAllAllowedPairsCovered(scenario, testSets);
+        }
+    }
+
+    @Test
+    public void testSuiteStaysCloseToASingleRun() {
+        //Shards of the same shape get the same suite, which is the worst case for laying them side by side
+        StringBuilder parameterSet = new StringBuilder();
+        for (int set = 0; set < 30; set++) {
+            parameterSet.append("Param").append(set).append(":");
+            for (int value = 0; value < 5; value++) {
+                parameterSet.append(value == 0 ? " " : ", ").append("v").append(set).append("_").append(value);
+            }
+            parameterSet.append("\n");
+        }
+        Scenario scenario = PairwiseInventoryFactory.generateScenario(parameterSet.toString());
+        int singleRunSize = new PairwiseGenerator(new CompiledModel(scenario)).generate().size();
+        for (int shardCount: new int[] { 2, 4 }) {
+            int shardedSize = new ShardedGenerator(scenario, shardCount).generate().size();
+            Assert.assertTrue(String.format("%d shards gave %d test sets, against %d from a single run", shardCount, shardedSize, singleRunSize),
+                    shardedSize <= 1.35 * singleRunSize);
+        }
+    }
+
+    @Test
+    public void testGivenExecutorIsLeftRunning() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ShardedGenerator generator = new ShardedGenerator(PairwiseInventoryFactory.generateScenario(InventoryFactoryTests.BIG_PARAMETER_SET), 4);
+            generator.setExecutor(executor);
+            List<int[]> first = generator.generate();
+            Assert.assertFalse(executor.isShutdown());
+
+            List<int[]> second = generator.generate();
+            Assert.assertEquals("The suite shouldn't depend on thread timing", first.size(), second.size());
+            for (int i = 0; i < first.size(); i++) {
+                Assert.assertArrayEquals("Test set " + i, first.get(i), second.get(i));
+            }
+            assertAllAllowedPairsCovered(generator.getScenario(), first);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertNoExcludedPairs(Scenario scenario, List<int[]> testSets) {
+        Exclusions exclusions = scenario.getExclusions();
+        for (int[] testSet: testSets) {
+            for (int i = 0; i < testSet.length; i++) {
+                for (int j = i + 1; j < testSet.length; j++) {
+                    Assert.assertFalse("Test set " + Arrays.toString(testSet) + " breaks a constraint", exclusions.isExcluded(testSet[i], testSet[j]));
+                }
+            }
+        }
+    }
+
+    private static void assertAllAllowedPairsCovered(Scenario scenario, List<int[]> testSets) {
+        Exclusions exclusions = scenario.getExclusions();
+        int[] positions = scenario.getParameterPositions();
+        for (int a = 0; a < scenario.getParameterValuesCount(); a++) {
+            for (int b = a + 1; b < scenario.getParameterValuesCount(); b++) {
+                if (positions[a] == positions[b] || exclusions.isExcluded(a, b)) {
+                    continue;
+                }
+                boolean covered = false;
+                for (int[] testSet: testSets) {
+                    covered |= testSet[ positions[a] ] == a && testSet[ positions[b] ] == b;
+                }
+                Assert.assertTrue("Pair [" + a + ", " + b + "] should be covered", covered);
+            }
+        }
+    }
+}
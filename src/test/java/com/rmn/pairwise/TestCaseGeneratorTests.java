@@ -1,14 +1,22 @@
 package com.rmn.pairwise;
 
+import ch.qos.logback.classic.Level;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TestCaseGeneratorTests {
     Logger log = LoggerFactory.getLogger(TestCaseGeneratorTests.class);
@@ -138,4 +146,278 @@ public class TestCaseGeneratorTests {
             System.out.println(String.format("Test Case %03d: [%s] [%s] [%s] [%s]", index++, rawTestCase.get("Browser"), rawTestCase.get("Page"), rawTestCase.get("Product"), rawTestCase.get("Click")));
         }
     }
+
+    private List<int[]> buildWithCandidatePool(int poolSize, ExecutorService executor) {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        dataSet.setSeed(42);
+        dataSet.setCandidatePoolSize(poolSize);
+        dataSet.setExecutor(executor);
+        dataSet.buildTestCases();
+        return dataSet.getRawTestSets();
+    }
+
+    @Test
+    public void testCandidatePoolIsReproducible() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<int[]> serial = buildWithCandidatePool(8, null);
+            List<int[]> parallel = buildWithCandidatePool(8, executor);
+
+            Assert.assertEquals("The executor shouldn't change the number of test sets", serial.size(), parallel.size());
+            for (int i = 0; i < serial.size(); i++) {
+                Assert.assertArrayEquals("The executor shouldn't change test set " + i, serial.get(i), parallel.get(i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCandidatePoolCoversEveryPair() {
+        List<int[]> testSets = buildWithCandidatePool(8, null);
+
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET);
+        for (int[] testSet: testSets) {
+            inventory.updateAllCounts(testSet);
+        }
+        Assert.assertEquals("There should be no unused pairs left", 0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testIteratorMatchesBuildTestCases() {
+        List<int[]> expected = PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET).getTestDataSet().getRawTestSets();
+
+        Iterator<int[]> iterator = PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET).getTestSetIterator();
+        int count = 0;
+        while (iterator.hasNext()) {
+            Assert.assertArrayEquals("Test set " + count + " should match", expected.get(count), iterator.next());
+            count++;
+        }
+        Assert.assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testIteratorCanStopEarly() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        int totalPairs = inventory.getMoleculeCount();
+
+        Iterator<int[]> iterator = inventory.getTestSetIterator();
+        int[] first = iterator.next();
+        Assert.assertEquals("Only the first test set's pairs should be used", totalPairs - 6, inventory.getUnusedMolecules().size());
+
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        Assert.assertEquals("Chrome", dataSet.getTestSet(first).get("Browser"));
+    }
+
+    @Test
+    public void testExistingSuiteLeavesNothingToGenerate() {
+        List<Map<String, String>> existing = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET).getTestDataSet().getTestSets();
+
+        TestDataSet dataSet = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET).getTestDataSet(existing);
+        Assert.assertEquals("A suite that already covers every pair shouldn't need anything added", 0, dataSet.getRawTestSets().size());
+        Assert.assertEquals(existing.size(), dataSet.getExistingRawTestSets().size());
+    }
+
+    @Test
+    public void testExistingSuiteIsExtended() {
+        List<Map<String, String>> fullSuite = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET).getTestDataSet().getTestSets();
+        List<Map<String, String>> existing = fullSuite.subList(0, fullSuite.size() / 2);
+
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        TestDataSet dataSet = inventory.getTestDataSet(existing);
+        Assert.assertTrue("Only the missing pairs should need new test sets", dataSet.getRawTestSets().size() < fullSuite.size());
+        Assert.assertEquals(0, inventory.getUnusedMolecules().size());
+
+        //Between them, the existing and the new test sets cover every pair
+        Scenario scenario = inventory.getScenario();
+        List<int[]> allTestSets = new ArrayList<int[]>(dataSet.getExistingRawTestSets());
+        allTestSets.addAll(dataSet.getRawTestSets());
+        for (int a = 0; a < scenario.getParameterValuesCount(); a++) {
+            for (int b = a + 1; b < scenario.getParameterValuesCount(); b++) {
+                int[] positions = scenario.getParameterPositions();
+                if (positions[a] == positions[b]) {
+                    continue;
+                }
+                boolean covered = false;
+                for (int[] testSet: allTestSets) {
+                    covered |= testSet[ positions[a] ] == a && testSet[ positions[b] ] == b;
+                }
+                Assert.assertTrue("Pair [" + a + ", " + b + "] should be covered", covered);
+            }
+        }
+    }
+
+    @Test
+    public void testAddedValueOnlyNeedsItsOwnPairs() {
+        IInventory previousInventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        TestDataSet previous = previousInventory.getTestDataSet();
+
+        //The new browser shifts the indexes of every value after it
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET.replace("Chrome, Firefox", "Chrome, Edge, Firefox"));
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        boolean[] kept = dataSet.addPreviousTestSets(previousInventory.getScenario(), previous.getRawTestSets());
+        dataSet.buildTestCases();
+
+        for (int i = 0; i < kept.length; i++) {
+            Assert.assertTrue("Test set " + i + " should be kept", kept[i]);
+            Assert.assertEquals(previous.getTestSets().get(i), dataSet.getTestSet(dataSet.getExistingRawTestSets().get(i)));
+        }
+        // Edge has 7 + 3 + 3 pairs to cover, and only one can be covered per page type
+        Assert.assertEquals(7, dataSet.getRawTestSets().size());
+        for (int[] testSet: dataSet.getRawTestSets()) {
+            Assert.assertEquals("Edge", dataSet.getTestSet(testSet).get("Browser"));
+        }
+        Assert.assertEquals(0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testChangedScenarioDropsAndCompletesTestSets() {
+        IInventory previousInventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        TestDataSet previous = previousInventory.getTestDataSet();
+
+        String changed = USER_PARAMETER_SET.replace(", 404", "") + "Device: Phone, Desktop\nBrowser = Safari => Login Type != Direct";
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(changed);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        boolean[] kept = dataSet.addPreviousTestSets(previousInventory.getScenario(), previous.getRawTestSets());
+        dataSet.buildTestCases();
+
+        int keptCount = 0;
+        for (int i = 0; i < kept.length; i++) {
+            Map<String, String> testSet = previous.getTestSets().get(i);
+            boolean allowed = !"404".equals(testSet.get("Page Type")) && !("Safari".equals(testSet.get("Browser")) && "Direct".equals(testSet.get("Login Type")));
+            Assert.assertEquals("Test set " + i + ": " + testSet, allowed, kept[i]);
+            if (kept[i]) {
+                Map<String, String> carriedOver = dataSet.getTestSet(dataSet.getExistingRawTestSets().get(keptCount++));
+                Assert.assertNotNull("The new parameter set should be filled in", carriedOver.get("Device"));
+                carriedOver.remove("Device");
+                Assert.assertEquals(testSet, carriedOver);
+            }
+        }
+        Assert.assertTrue(keptCount > 0);
+        Assert.assertEquals(keptCount, dataSet.getExistingRawTestSets().size());
+        Assert.assertEquals(0, inventory.getUnusedMolecules().size());
+    }
+
+    @Test
+    public void testRawTestSetRoundTrip() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        TestDataSet dataSet = inventory.getTestDataSet();
+        for (int[] testSet: dataSet.getRawTestSets()) {
+            Assert.assertArrayEquals(testSet, dataSet.getRawTestSet(dataSet.getTestSet(testSet)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExistingTestSetWithUnknownValue() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(USER_PARAMETER_SET);
+        Map<String, String> testSet = new HashMap<String, String>();
+        testSet.put("Browser", "Opera");
+        testSet.put("Page Type", "Home");
+        testSet.put("Login Type", "Direct");
+        testSet.put("User Type", "User");
+        inventory.getTestDataSet(Arrays.asList(testSet));
+    }
+
+    @Test
+    public void testBuildingCandidatesAllocatesNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        //Debug logging allocates by design, so measure the way it would run in production
+        ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(TestDataSet.class);
+        Level level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            assertCandidatesAllocateNothing(threads, PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET));
+            assertCandidatesAllocateNothing(threads, PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET, 3));
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    @Test
+    public void testMetricsFollowGeneration() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(BIG_PARAMETER_SET);
+        int moleculeCount = inventory.getUnusedMolecules().size();
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        dataSet.setCandidatePoolSize(4);
+        GenerationMetrics metrics = new GenerationMetrics();
+        dataSet.addListener(metrics);
+        dataSet.buildTestCases();
+
+        Assert.assertEquals(moleculeCount, metrics.getStartingUnusedCount());
+        Assert.assertEquals(dataSet.getRawTestSets().size(), metrics.getRowCount());
+        Assert.assertEquals(0, metrics.getIllegalCount());
+        int[] unusedCounts = metrics.getUnusedCounts();
+        for (int row = 1; row < unusedCounts.length; row++) {
+            Assert.assertTrue("Every test set should cover something new", unusedCounts[row] < unusedCounts[row - 1]);
+        }
+        Assert.assertEquals(0, unusedCounts[unusedCounts.length - 1]);
+        Assert.assertEquals(1.0, metrics.getCoverage(metrics.getRowCount() - 1), 0);
+        Assert.assertTrue(metrics.getPeakCoverageBytes() > 0);
+        Assert.assertTrue(metrics.getGenerationNanos() >= metrics.getRowNanos());
+        Assert.assertTrue(metrics.getRowNanos() >= metrics.getBestMoleculeNanos() + metrics.getSingleTestSetNanos() + metrics.getUpdateAllCountsNanos());
+    }
+
+    @Test
+    public void testListenerSeesIteratedTestSets() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        GenerationMetrics metrics = new GenerationMetrics();
+        dataSet.addListener(metrics);
+        int rows = 0;
+        for (Iterator<int[]> testSets = dataSet.testSetIterator(); testSets.hasNext(); testSets.next()) {
+            rows++;
+        }
+        Assert.assertEquals(rows, metrics.getRowCount());
+        Assert.assertTrue(metrics.getGenerationNanos() > 0);
+    }
+
+    @Test
+    public void testHasNextAfterTheEndChangesNothing() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(PARAMETER_SET);
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        GenerationMetrics metrics = new GenerationMetrics();
+        dataSet.addListener(metrics);
+        Iterator<int[]> testSets = dataSet.testSetIterator();
+        while (testSets.hasNext()) {
+            testSets.next();
+        }
+        int startingUnusedCount = metrics.getStartingUnusedCount();
+        double firstCoverage = metrics.getCoverage(0);
+        long generationNanos = metrics.getGenerationNanos();
+
+        Assert.assertFalse(testSets.hasNext());
+        Assert.assertFalse(testSets.hasNext());
+        Assert.assertTrue(startingUnusedCount > 0);
+        Assert.assertEquals(startingUnusedCount, metrics.getStartingUnusedCount());
+        Assert.assertEquals(firstCoverage, metrics.getCoverage(0), 0);
+        Assert.assertEquals(generationNanos, metrics.getGenerationNanos());
+    }
+
+    private void assertCandidatesAllocateNothing(com.sun.management.ThreadMXBean threads, IInventory inventory) {
+        TestDataSet dataSet = new TestDataSet(inventory, inventory.getScenario());
+        TestDataSet.Workspace workspace = new TestDataSet.Workspace(inventory.getScenario());
+        int[] bestMolecule = inventory.getBestMolecule();
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            dataSet.getSingleTestSet(bestMolecule, random, workspace); // warm up, so the JIT is done with it
+        }
+
+        //Allocating per candidate shows up in every round; a one-off, like the JIT recompiling something mid-round, doesn't
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3 && allocated >= 1024; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 10000; i++) {
+                dataSet.getSingleTestSet(bestMolecule, random, workspace);
+            }
+            allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        }
+        Assert.assertTrue("Building 10000 candidates allocated " + allocated + " bytes", allocated < 1024);
+    }
 }
@@ -0,0 +1,69 @@
+package com.rmn.pairwise;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class TestSetViewTests {
+
+    enum Browser { CHROME, FIREFOX, SAFARI }
+
+    private final ParameterSet<Browser> browsers = named("Browser", new ParameterSet<Browser>(Arrays.asList(Browser.values())));
+    private final ParameterSet<Integer> widths = named("Width", new ParameterSet<Integer>(Arrays.asList(320, 768, 1024, 1920)));
+    private final ParameterSet<Boolean> flags = named("LoggedIn", new ParameterSet<Boolean>(Arrays.asList(true, false)));
+
+    private static <T> ParameterSet<T> named(String name, ParameterSet<T> parameterSet) {
+        parameterSet.setName(name);
+        return parameterSet;
+    }
+
+    private TestDataSet generate() {
+        Scenario scenario = new Scenario.Builder().addParameterSet(browsers).addParameterSet(widths).addParameterSet(flags).build();
+        IInventory inventory = new PairwiseInventory();
+        inventory.setScenario(scenario);
+        inventory.buildMolecules();
+        return inventory.getTestDataSet();
+    }
+
+    @Test
+    public void testTypedColumns() {
+        TestDataSet dataSet = generate();
+        TestSetView testSet = dataSet.newTestSetView();
+        TestSetView.Column<Browser> browser = testSet.column(browsers);
+        TestSetView.Column<Integer> width = testSet.column(widths);
+        TestSetView.Column<Boolean> loggedIn = testSet.column("LoggedIn");
+
+        for (int[] rawTestSet: dataSet.getRawTestSets()) {
+            testSet.with(rawTestSet);
+            Browser browserValue = testSet.get(browser);
+            int widthValue = testSet.get(width);
+            boolean loggedInValue = testSet.get(loggedIn);
+            Assert.assertSame(browsers.getValue(testSet.getValueIndex(0)), browserValue);
+            Assert.assertEquals(widths.getValue(testSet.getValueIndex(1)).intValue(), widthValue);
+            Assert.assertEquals(flags.getValue(testSet.getValueIndex(2)), loggedInValue);
+        }
+        Assert.assertEquals(3 * 4, dataSet.getRawTestSets().size());
+    }
+
+    @Test
+    public void testStringTestSetsAreUnchanged() {
+        IInventory inventory = PairwiseInventoryFactory.generateParameterInventory(InventoryFactoryTests.PARAMETER_SET);
+        TestDataSet dataSet = inventory.getTestDataSet();
+        List<Map<String, String>> testSets = dataSet.getTestSets();
+        TestSetView testSet = dataSet.newTestSetView();
+        for (int i = 0; i < testSets.size(); i++) {
+            testSet.with(dataSet.getRawTestSets().get(i));
+            for (int column = 0; column < testSet.getColumnCount(); column++) {
+                Assert.assertEquals(testSets.get(i).get(testSet.getName(column)), testSet.get(column));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignParameterSet() {
+        generate().newTestSetView().column(named("Browser", new ParameterSet<Browser>(Arrays.asList(Browser.values()))));
+    }
+}